@@ -0,0 +1,57 @@
+package com.example.rag.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Dedicated thread pools, kept apart so slow work of one kind cannot starve another.
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService chatPipelineExecutor(RagConfig config) {
+        return Executors.newFixedThreadPool(config.getRetrieval().getPipelineThreads(),
+                new CustomizableThreadFactory("chat-pipeline-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService ensembleExecutor(MlConfig config) {
+        return Executors.newFixedThreadPool(config.getEnsemble().getThreads(),
+                new CustomizableThreadFactory("ensemble-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService batchScoringExecutor(MlConfig config) {
+        return Executors.newFixedThreadPool(config.getBatch().resolveThreads(),
+                new CustomizableThreadFactory("batch-scoring-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService beamExecutor(MlConfig config) {
+        return Executors.newFixedThreadPool(config.getBeam().getThreads(),
+                new CustomizableThreadFactory("beam-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService refinementJobExecutor(MlConfig config) {
+        return Executors.newFixedThreadPool(config.getJobs().getThreads(),
+                new CustomizableThreadFactory("refinement-job-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService refinementEventExecutor(MlConfig config) {
+        return Executors.newFixedThreadPool(config.getJobs().getEventThreads(),
+                new CustomizableThreadFactory("refinement-event-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool modelSelectionPool(MlConfig config) {
+        return new ForkJoinPool(config.getAuto().resolveParallelism());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.rag.service.ml.RegressionNetworkEngine;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "ml")
+@Data
+public class MlConfig {
+    // trained models are saved here and reloaded at startup, blank to keep them in memory only
+    private String modelDir = "models";
+    private long modelSaveIntervalMillis = 60000;
+    private Neural neural = new Neural();
+    private Ensemble ensemble = new Ensemble();
+    private Batch batch = new Batch();
+    private Beam beam = new Beam();
+    private Jobs jobs = new Jobs();
+    private Cache cache = new Cache();
+    private Auto auto = new Auto();
+    private Budget budget = new Budget();
+
+    @Data
+    public static class Neural {
+        // don't load ND4J/DL4J until the first NEURAL or ENSEMBLE prediction
+        private boolean lazyStart = false;
+        // DL4J, or JAVA for the allocation-free pure-Java network
+        private RegressionNetworkEngine engine = RegressionNetworkEngine.DL4J;
+        // epochs run over the history per background training round
+        private int epochs = 100;
+        // quiet period after the last new history row before training starts
+        private long debounceMillis = 2000;
+        // longest a training round is pushed back while new rows keep arriving
+        private long maxDebounceMillis = 30000;
+        // concurrent single-row predictions are coalesced into batches of at most this many rows
+        private int inferenceBatchSize = 32;
+        // how long the first row of a batch may wait for others to join it
+        private long inferenceMaxWaitMicros = 1000;
+    }
+
+    @Data
+    public static class Ensemble {
+        // threads evaluating ensemble members concurrently, shared by all sessions
+        private int threads = 6;
+        // skip members whose marginal accuracy doesn't pay for their latency
+        private boolean adaptive = true;
+        // relative ensemble MSE reduction a member has to bring per millisecond of its latency
+        private double minGainPerMs = 0.01;
+        // members faster than this are always evaluated; skipping them would save nothing
+        private double minSkipLatencyMs = 1.0;
+        // share of requests that still evaluate a skipped member, so it can earn its way back
+        private double probeRate = 0.05;
+        // matched predictions a member needs before it can be skipped
+        private int minObservations = 30;
+        // weight of the past in the rolling error and latency averages
+        private double decay = 0.98;
+    }
+
+    @Data
+    public static class Batch {
+        // threads scoring uploaded prompt corpora, 0 for one per core
+        private int threads = 0;
+        // prompts handed to a worker at a time
+        private int chunkSize = 256;
+        // chunks read ahead of the one being written, which bounds the memory a batch can hold
+        private int maxInFlightChunks = 16;
+
+        public int resolveThreads() {
+            return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Data
+    public static class Beam {
+        // prompts carried into the next refinement iteration
+        private int width = 1;
+        // rewrites generated per iteration, 1 keeps the single-rewrite loop
+        private int candidates = 1;
+        // threads generating candidates, shared by all sessions; the Ollama REFINEMENT class
+        // limit still caps how many run at once
+        private int threads = 8;
+        // candidates sample temperatures spread evenly around this one
+        private double temperature = 0.7;
+        private double temperatureSpread = 0.6;
+    }
+
+    @Data
+    public static class Jobs {
+        // refinement sessions submitted as jobs that run at once; the rest queue
+        private int threads = 4;
+        // send job progress to SSE subscribers, so a slow client never holds up a job
+        private int eventThreads = 2;
+        // finished jobs stay queryable this long
+        private long retentionMinutes = 10;
+    }
+
+    @Data
+    public static class Cache {
+        // serve converged sessions again for the same or a near-duplicate prompt and parameters
+        private boolean enabled = true;
+        private long ttlMinutes = 60;
+        private int maxEntries = 1000;
+        // estimated Jaccard similarity of prompt shingles above which a prompt counts as a near duplicate
+        private double similarityThreshold = 0.8;
+        // largest change of any learned feature weight a cached session survives
+        private double weightDriftTolerance = 0.05;
+    }
+
+    @Data
+    public static class Auto {
+        // cross-validation folds per model selection run
+        private int folds = 5;
+        // history rows needed before AUTO stops falling back to ENSEMBLE
+        private int minRows = 30;
+        // a cheaper method wins when its CV error is within this fraction of the best one
+        private double tolerance = 0.05;
+        // cross-validate the DNN too (one network trained per fold)
+        private boolean includeNeural = true;
+        // ForkJoin parallelism for the selection runs, 0 for one per core
+        private int parallelism = 0;
+
+        public int resolveParallelism() {
+            return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Data
+    public static class Budget {
+        // stop a session early once another rewrite is predicted not to be worth its time
+        private boolean enabled = true;
+        // expected quality score gain a rewrite has to bring per second it takes
+        private double minGainPerSecond = 0.001;
+        // consecutive-iteration pairs in the history needed before any iteration is skipped
+        private int minSamples = 30;
+        // share of skippable rewrites still run, so the history keeps covering later iterations
+        private double probeRate = 0.05;
+        // assumed rewrite time until one has been measured
+        private double defaultRewriteSeconds = 5.0;
+        // weight of the past in the rolling rewrite time
+        private double decay = 0.9;
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.rag.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Configuration
 @ConfigurationProperties(prefix = "ollama")
@@ -13,4 +18,40 @@ public class OllamaConfig {
     private String model;
     private String embeddingModel;
     private long timeout;
+    // log full request/response bodies (chunk text, embeddings) - debugging only
+    private boolean logPayloads = false;
+    // how long Ollama keeps the model loaded after a call: a duration ("30m") or seconds (-1 for ever)
+    private String keepAlive = "30m";
+    // a chat history resent beyond this many characters restarts from its system message
+    private int chatHistoryMaxChars = 8000;
+
+    // Ollama servers to route across; when empty only baseUrl is used
+    private List<String> backends = new ArrayList<>();
+    private long healthCheckInterval = 10000;
+    // duplicate slow embedding calls onto a second backend after the observed p95
+    private boolean hedgeEmbeddings = false;
+    private long hedgeMinDelay = 50;
+
+    private Scheduler scheduler = new Scheduler();
+
+    @Data
+    public static class Scheduler {
+        // total Ollama calls in flight across all priority classes; 0 scales it with the pool,
+        // maxConcurrentPerBackend for each healthy backend
+        private int maxConcurrent = 0;
+        private int maxConcurrentPerBackend = 4;
+        private PriorityClass interactive = new PriorityClass(4, 8);
+        private PriorityClass refinement = new PriorityClass(2, 2);
+        private PriorityClass ingestion = new PriorityClass(1, 1);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PriorityClass {
+        // calls of this class in flight for each healthy backend
+        private int maxConcurrentPerBackend;
+        // share of dispatches relative to the other classes when all are queued
+        private int weight;
+    }
 }
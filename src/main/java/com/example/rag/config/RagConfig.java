@@ -0,0 +1,32 @@
+package com.example.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "rag")
+@Data
+public class RagConfig {
+    private Context context = new Context();
+    private Retrieval retrieval = new Retrieval();
+
+    @Data
+    public static class Context {
+        // max estimated tokens of chunk text sent to the LLM per question
+        private int tokenBudget = 768;
+        // how many ranked chunks are considered before packing into the budget
+        private int candidateChunks = 8;
+        // upper bound on the overlap searched between adjacent chunks
+        private int maxOverlapChars = 200;
+    }
+
+    @Data
+    public static class Retrieval {
+        // share of the ranking score from embedding similarity, the rest is keyword overlap
+        private double semanticWeight = 0.5;
+        // threads running the concurrent stages of a chat request
+        private int pipelineThreads = 8;
+    }
+}
@@ -1,18 +1,38 @@
 package com.example.rag.controller.ml;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.example.rag.dto.requestDtos.RefinementRequest;
+import com.example.rag.dto.responseDtos.MetricsSummary;
+import com.example.rag.dto.responseDtos.RefinementJobStatus;
 import com.example.rag.dto.responseDtos.RefinementResponse;
+import com.example.rag.service.ml.BatchScoringService;
+import com.example.rag.service.ml.FeatureVector;
 import com.example.rag.service.ml.PromptRefinementService;
+import com.example.rag.service.ml.RefinementJob;
+import com.example.rag.service.ml.RefinementJobService;
+import com.example.rag.service.ml.RegressionModelsService;
+import com.example.rag.service.ml.NeuralNetworkTrainer.NetworkSnapshot;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -25,6 +45,11 @@ import org.springframework.web.bind.annotation.RequestBody;
 public class RefinementController {
 
     private final PromptRefinementService promptRefinementService;
+    private final RegressionModelsService regressionModelsService;
+    private final BatchScoringService batchScoringService;
+    private final RefinementJobService refinementJobService;
+
+    private static final String NDJSON = "application/x-ndjson";
 
     @PostMapping("/refine")
     public ResponseEntity<?> refinePrompt(@RequestBody RefinementRequest request) {
@@ -48,6 +73,98 @@ public class RefinementController {
         }
     }
 
+    /**
+     * Starts a refinement session in the background and returns its session id at once.
+     * Follow it on /jobs/{sessionId}/events.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitRefinement(@RequestBody RefinementRequest request) {
+        if (request.getPrompt() == null || request.getPrompt().trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Prompt cannot be empty"));
+        }
+        RefinementJob job = refinementJobService.submit(request);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toStatus());
+    }
+
+    @GetMapping("/jobs/{sessionId}")
+    public ResponseEntity<RefinementJobStatus> jobStatus(@PathVariable String sessionId) {
+        return refinementJobService.get(sessionId)
+                .map(job -> ResponseEntity.ok(job.toStatus()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Streams the session's iterations as server-sent events, replaying those already done.
+     */
+    @GetMapping(value = "/jobs/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> jobEvents(@PathVariable String sessionId) {
+        return refinementJobService.get(sessionId)
+                .map(job -> {
+                    SseEmitter emitter = new SseEmitter();
+                    job.subscribe(emitter);
+                    return ResponseEntity.ok(emitter);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/jobs/{sessionId}")
+    public ResponseEntity<RefinementJobStatus> cancelJob(@PathVariable String sessionId) {
+        return refinementJobService.cancel(sessionId)
+                .map(job -> ResponseEntity.ok(job.toStatus()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Scores an uploaded JSONL corpus of {"id": ..., "prompt": "..."} lines, streaming back
+     * one result line per prompt and a summary line. No LLM call, nothing persisted.
+     */
+    @PostMapping(value = "/score-batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> scoreBatch(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        log.info("Received batch scoring upload: {} ({} bytes)", file.getOriginalFilename(), file.getSize());
+        return streamScores(file.getInputStream());
+    }
+
+    @PostMapping(value = "/score-batch", consumes = { NDJSON, MediaType.TEXT_PLAIN_VALUE,
+            MediaType.APPLICATION_OCTET_STREAM_VALUE }, produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> scoreBatch(HttpServletRequest request) throws IOException {
+        log.info("Received batch scoring stream ({} bytes)", request.getContentLengthLong());
+        return streamScores(request.getInputStream());
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamScores(InputStream in) {
+        // weights resolved once for the whole batch
+        FeatureVector weights = promptRefinementService.resolveFeatureWeights(null);
+        StreamingResponseBody body = out -> {
+            try (in) {
+                batchScoringService.score(in, out, weights);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Error metrics of the stored predictions per regression method, plus an "ALL" row.
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<List<MetricsSummary>> metrics() {
+        return ResponseEntity.ok(promptRefinementService.getMetricsSummaries());
+    }
+
+    @GetMapping("/models")
+    public ResponseEntity<Map<String, Object>> models() {
+        Map<String, Object> models = new LinkedHashMap<>();
+        NetworkSnapshot network = regressionModelsService.getNeuralNetworkSnapshot();
+        models.put("neuralNetworkVersion", network != null ? network.getVersion() : null);
+        models.put("neuralNetworkEngine", network != null ? network.getNetwork().engine() : null);
+        models.put("neuralNetworkTrainingSize", network != null ? network.getTrainingSize() : 0);
+        models.put("neuralNetworkInference", regressionModelsService.getInferenceStats());
+        models.put("autoSelection", regressionModelsService.getModelSelection());
+        models.put("ensembleMembers", regressionModelsService.getEnsembleMemberStats());
+        return ResponseEntity.ok(models);
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
         return ResponseEntity.ok(Map.of(
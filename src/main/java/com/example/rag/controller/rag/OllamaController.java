@@ -0,0 +1,33 @@
+package com.example.rag.controller.rag;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.rag.service.rag.OllamaBackendPool.BackendStatus;
+import com.example.rag.service.rag.OllamaPriority;
+import com.example.rag.service.rag.OllamaScheduler.ClassStats;
+import com.example.rag.service.rag.OllamaService;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/ollama")
+@RequiredArgsConstructor
+public class OllamaController {
+    private final OllamaService ollamaService;
+
+    @GetMapping("/backends")
+    public ResponseEntity<List<BackendStatus>> getBackends() {
+        return ResponseEntity.ok(ollamaService.getBackendStatus());
+    }
+
+    @GetMapping("/scheduler")
+    public ResponseEntity<Map<OllamaPriority, ClassStats>> getSchedulerStats() {
+        return ResponseEntity.ok(ollamaService.getSchedulerStats());
+    }
+}
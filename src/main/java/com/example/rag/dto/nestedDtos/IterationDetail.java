@@ -11,7 +11,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class IterationDetail {
     private Integer iteration;
     private String prompt;
@@ -20,4 +20,6 @@ public class IterationDetail {
     private String feedback;
     private Map<String, Double> features;
     private Double improvement;
+    // rewrites scored to produce the next iteration's prompt, null outside beam mode
+    private Integer candidatesEvaluated;
 }
\ No newline at end of file
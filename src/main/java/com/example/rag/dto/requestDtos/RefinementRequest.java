@@ -17,8 +17,11 @@ public class RefinementRequest {
     private String prompt;
     private Integer maxIterations = 5;
     private Double convergenceThreshold = 0.95;
-    private String regressionMethod = "ENSEMBLE"; // LINEAR, POLYNOMIAL, NEURAL, ENSEMBLE
+    private String regressionMethod = "ENSEMBLE"; // LINEAR, POLYNOMIAL, NEURAL, ENSEMBLE, AUTO
     private List<String> optimizationGoals; // CLARITY, RELEVANCE, COMPLETENESS, SPECIFICITY
     private Map<String, Double> featureWeights; // Optional custom weights
+    private Integer beamWidth; // Optional, prompts kept per iteration (defaults to ml.beam.width)
+    private Integer beamCandidates; // Optional, rewrites generated per iteration (defaults to ml.beam.candidates)
+    private Boolean skipCache; // Optional, always run a fresh session
 
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.example.rag.dto.responseDtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchScoringSummary {
+    private Long prompts;
+    private Long failed;
+    private Long elapsedMs;
+    private Double promptsPerSecond;
+}
@@ -0,0 +1,28 @@
+package com.example.rag.dto.responseDtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EnsembleMemberStats {
+    private String member;
+    // currently left out of ENSEMBLE predictions, apart from probes
+    private Boolean skipped;
+    // predictions matched with a realised quality score
+    private Long observations;
+    // rolling squared error of the member itself, and of the ensemble with and without it
+    private Double rollingMse;
+    private Double ensembleMseWith;
+    private Double ensembleMseWithout;
+    // relative ensemble MSE reduction the member brings, (without - with) / with
+    private Double marginalGain;
+    private Double averageLatencyMs;
+    private Long evaluations;
+    private Long skips;
+    private Long probes;
+}
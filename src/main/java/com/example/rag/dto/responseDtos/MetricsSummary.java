@@ -16,4 +16,6 @@ public class MetricsSummary {
     private Double averageMae;
     private Double averageRSquared;
     private Integer totalSessions;
+    // (actual, predicted) pairs the error metrics are pooled over
+    private Long predictions;
 }
\ No newline at end of file
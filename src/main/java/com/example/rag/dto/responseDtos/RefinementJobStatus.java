@@ -0,0 +1,18 @@
+package com.example.rag.dto.responseDtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RefinementJobStatus {
+    private String sessionId;
+    private String status; // QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    private Integer iterationsCompleted;
+    private RefinementResponse result;
+    private String error;
+}
@@ -13,7 +13,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class RefinementResponse {
     private String sessionId;
     private String originalPrompt;
@@ -27,4 +27,10 @@ public class RefinementResponse {
     private RegressionResult RegressionResult;
     private Map<String, Double> finalFeatures;
     private String regressionMethod;
+    // iterations left unrun because another rewrite wasn't expected to be worth its time
+    private Integer skippedIterations;
+    // set when the result was served from an earlier converged session
+    private Boolean cacheHit;
+    private String cachedSessionId;
+    private Double cacheSimilarity;
 }
@@ -66,4 +66,20 @@ public class FeatureWeight {
             this.maxWeight = newWeight;
         }
     }
+
+    /**
+     * Records a batch of in-memory updates at once: the latest weight, how many updates led to it
+     * and the lowest and highest weights they went through (infinite when not tracked).
+     */
+    public void applyUpdates(double latestWeight, int updates, double lowest, double highest) {
+        this.weight = latestWeight;
+        this.updateCount = (this.updateCount == null ? 0 : this.updateCount) + updates;
+        this.lastUpdated = LocalDateTime.now();
+        if (Double.isFinite(lowest) && (this.minWeight == null || lowest < this.minWeight)) {
+            this.minWeight = lowest;
+        }
+        if (Double.isFinite(highest) && (this.maxWeight == null || highest > this.maxWeight)) {
+            this.maxWeight = highest;
+        }
+    }
 }
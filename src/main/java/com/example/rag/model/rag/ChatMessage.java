@@ -1,5 +1,7 @@
 package com.example.rag.model.rag;
 
+import java.util.Map;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,4 +13,5 @@ public class ChatMessage {
     private String query;
     private String response;
     private String[] sourceChunks;
+    private Map<String, Long> stageTimingsMs;
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ public class DocumentChunk {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
 
+    // base64 little-endian float32 vector, see EmbeddingCodec
     @Column(columnDefinition = "TEXT", nullable = false)
     private String embedding;
 
@@ -15,6 +15,10 @@ interface PromptRefinementRepository extends JpaRepository<PromptRefinement, Lon
     List<PromptRefinement> findBySessionId(String sessionId);
     List<PromptRefinement> findBySessionIdOrderByIterationNumberAsc(String sessionId);
 
+    // fetches the feature map in the same query instead of one select per refinement
+    @Query("SELECT DISTINCT pr FROM PromptRefinement pr LEFT JOIN FETCH pr.extractedFeatures ORDER BY pr.id")
+    List<PromptRefinement> findAllWithFeatures();
+
     @Query("SELECT pr FROM PromptRefinement pr WHERE pr.converged = true ORDER BY pr.qualityScore DESC")
     List<PromptRefinement> findConvergedRefinements();
     
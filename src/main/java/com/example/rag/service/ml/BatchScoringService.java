@@ -0,0 +1,188 @@
+package com.example.rag.service.ml;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.responseDtos.BatchScoringSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scores prompt corpora without calling the LLM or persisting anything.
+ * Input is newline-delimited JSON, one {@code {"id": ..., "prompt": "..."}} per line; output is one
+ * line per prompt with its features and quality score, in input order, then a summary line.
+ * Lines are read in chunks that are extracted and serialized on the batch pool, and the reader
+ * stays at most {@code ml.batch.max-in-flight-chunks} ahead of the writer, so memory is bounded
+ * whatever the size of the corpus.
+ */
+@Service
+@Slf4j
+public class BatchScoringService {
+
+    private final FeatureExtractionService featureExtractionService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int maxInFlightChunks;
+
+    public BatchScoringService(FeatureExtractionService featureExtractionService, ObjectMapper objectMapper,
+            MlConfig config, @Qualifier("batchScoringExecutor") ExecutorService executor) {
+        this.featureExtractionService = featureExtractionService;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.chunkSize = Math.max(1, config.getBatch().getChunkSize());
+        this.maxInFlightChunks = Math.max(1, config.getBatch().getMaxInFlightChunks());
+    }
+
+    /**
+     * Streams the scores of every prompt in {@code in} to {@code out}. Malformed lines produce an
+     * error line instead of failing the batch; blank lines are skipped.
+     */
+    public BatchScoringSummary score(InputStream in, OutputStream out, FeatureVector weights) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Deque<CompletableFuture<ScoredChunk>> inFlight = new ArrayDeque<>();
+        long prompts = 0;
+        long failed = 0;
+        try {
+            List<String> lines = new ArrayList<>(chunkSize);
+            long firstLine = 1;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    inFlight.add(submit(lines, firstLine, weights));
+                    lines = new ArrayList<>(chunkSize);
+                    firstLine = lineNumber + 1;
+                }
+                // keep the reader a bounded distance ahead of the writer
+                while (inFlight.size() >= maxInFlightChunks) {
+                    ScoredChunk chunk = write(inFlight.poll(), out);
+                    prompts += chunk.prompts;
+                    failed += chunk.failed;
+                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(submit(lines, firstLine, weights));
+            }
+            while (!inFlight.isEmpty()) {
+                ScoredChunk chunk = write(inFlight.poll(), out);
+                prompts += chunk.prompts;
+                failed += chunk.failed;
+            }
+        } finally {
+            // client gone or input unreadable: don't score what nobody will read
+            inFlight.forEach(future -> future.cancel(false));
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        BatchScoringSummary summary = BatchScoringSummary.builder()
+                .prompts(prompts)
+                .failed(failed)
+                .elapsedMs(elapsedNanos / 1_000_000)
+                .promptsPerSecond(elapsedNanos > 0 ? prompts * 1e9 / elapsedNanos : 0.0)
+                .build();
+        ObjectNode summaryLine = objectMapper.createObjectNode();
+        summaryLine.set("summary", objectMapper.valueToTree(summary));
+        out.write(objectMapper.writeValueAsBytes(summaryLine));
+        out.write('\n');
+        out.flush();
+
+        log.info("Scored {} prompts ({} failed) in {} ms, {} prompts/s", prompts, failed,
+                summary.getElapsedMs(), String.format("%.0f", summary.getPromptsPerSecond()));
+        return summary;
+    }
+
+    private CompletableFuture<ScoredChunk> submit(List<String> lines, long firstLine, FeatureVector weights) {
+        return CompletableFuture.supplyAsync(() -> scoreChunk(lines, firstLine, weights), executor);
+    }
+
+    private ScoredChunk write(CompletableFuture<ScoredChunk> future, OutputStream out) throws IOException {
+        ScoredChunk chunk;
+        try {
+            chunk = future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        out.write(chunk.ndjson);
+        out.flush();
+        return chunk;
+    }
+
+    private ScoredChunk scoreChunk(List<String> lines, long firstLine, FeatureVector weights) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(lines.size() * 512);
+        int prompts = 0;
+        int failed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            ObjectNode result = objectMapper.createObjectNode();
+            result.put("line", firstLine + i);
+            try {
+                JsonNode input = objectMapper.readTree(line);
+                JsonNode prompt = input.path("prompt");
+                if (input.has("id")) {
+                    result.set("id", input.get("id"));
+                }
+                if (!prompt.isTextual()) {
+                    throw new IllegalArgumentException("missing \"prompt\" string");
+                }
+                FeatureVector features = featureExtractionService.extractFeatures(prompt.asText());
+                result.put("qualityScore", featureExtractionService.calculateQualityScore(features, weights));
+                result.set("features", objectMapper.valueToTree(features.toMap()));
+                prompts++;
+            } catch (JsonProcessingException e) {
+                // the original message leaves out the echo of the input
+                result.put("error", "invalid JSON: " + e.getOriginalMessage());
+                failed++;
+            } catch (IllegalArgumentException e) {
+                result.put("error", e.getMessage());
+                failed++;
+            }
+            try {
+                buffer.write(objectMapper.writeValueAsBytes(result));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.write('\n');
+        }
+        return new ScoredChunk(buffer.toByteArray(), prompts + failed, failed);
+    }
+
+    private static class ScoredChunk {
+        private final byte[] ndjson;
+        private final int prompts;
+        private final int failed;
+
+        ScoredChunk(byte[] ndjson, int prompts, int failed) {
+            this.ndjson = ndjson;
+            this.prompts = prompts;
+            this.failed = failed;
+        }
+    }
+}
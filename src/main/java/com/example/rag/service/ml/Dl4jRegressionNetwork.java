@@ -0,0 +1,104 @@
+package com.example.rag.service.ml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * {@link RegressionNetwork} on a DL4J {@link MultiLayerNetwork}.
+ */
+final class Dl4jRegressionNetwork implements RegressionNetwork {
+
+    private final MultiLayerNetwork network;
+
+    private Dl4jRegressionNetwork(MultiLayerNetwork network) {
+        this.network = network;
+    }
+
+    static Dl4jRegressionNetwork create() {
+        int[] sizes = RegressionNetworkEngine.LAYER_SIZES;
+        MultiLayerConfiguration config = new NeuralNetConfiguration.Builder()
+                .seed(RegressionNetworkEngine.SEED)
+                .weightInit(WeightInit.XAVIER)
+                .updater(new Adam(RegressionNetworkEngine.LEARNING_RATE))
+                .list()
+                .layer(new DenseLayer.Builder()
+                        .nIn(sizes[0])
+                        .nOut(sizes[1])
+                        .activation(Activation.RELU)
+                        .build())
+                .layer(new DenseLayer.Builder()
+                        .nIn(sizes[1])
+                        .nOut(sizes[2])
+                        .activation(Activation.RELU)
+                        .build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                        .nIn(sizes[2])
+                        .nOut(sizes[3])
+                        .activation(Activation.SIGMOID)
+                        .build())
+                .build();
+        MultiLayerNetwork neuralNetwork = new MultiLayerNetwork(config);
+        neuralNetwork.init();
+        return new Dl4jRegressionNetwork(neuralNetwork);
+    }
+
+    static Dl4jRegressionNetwork read(InputStream in) throws IOException {
+        return new Dl4jRegressionNetwork(ModelSerializer.restoreMultiLayerNetwork(in, true));
+    }
+
+    @Override
+    public RegressionNetworkEngine engine() {
+        return RegressionNetworkEngine.DL4J;
+    }
+
+    @Override
+    public void fit(double[][] inputs, double[] targets, int epochs) {
+        DataSet dataset = new DataSet(Nd4j.create(inputs), Nd4j.create(targets).reshape(targets.length, 1));
+        for (int i = 0; i < epochs; i++) {
+            network.fit(dataset);
+        }
+    }
+
+    @Override
+    public double[] predictBatch(double[][] rows) {
+        INDArray output;
+        // output() reuses layer state internally, so callers sharing a network take turns
+        synchronized (network) {
+            output = network.output(Nd4j.create(rows));
+        }
+        double[] predictions = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            predictions[i] = output.getDouble(i, 0);
+        }
+        return predictions;
+    }
+
+    @Override
+    public RegressionNetwork copy() {
+        return new Dl4jRegressionNetwork(network.clone());
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        ModelSerializer.writeModel(network, out, true);
+    }
+
+    MultiLayerNetwork getNetwork() {
+        return network;
+    }
+}
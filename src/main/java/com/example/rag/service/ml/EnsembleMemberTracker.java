@@ -0,0 +1,222 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.responseDtos.EnsembleMemberStats;
+
+/**
+ * Rolling accuracy and latency of each ENSEMBLE member, and the decision to leave one out.
+ * The member predictions of an ensemble call are held until the refinement row with the same
+ * features commits, then scored against its realised quality: the member's own error and the
+ * ensemble's error with and without it. A member whose relative error reduction is below
+ * {@code ml.ensemble.min-gain-per-ms} times its latency is skipped (members under
+ * {@code ml.ensemble.min-skip-latency-ms} always run), except on a sampled
+ * {@code ml.ensemble.probe-rate} of requests that keep its statistics current.
+ */
+@Component
+public class EnsembleMemberTracker {
+
+    // ensemble calls awaiting their row; beam candidates that are never saved age out
+    private static final int MAX_PENDING = 4096;
+
+    private final MlConfig.Ensemble config;
+
+    // guarded by this
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private final LinkedHashMap<FeatureKey, Call> pending = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FeatureKey, Call> eldest) {
+            return size() > MAX_PENDING;
+        }
+    };
+    private int absorbed;
+
+    public EnsembleMemberTracker(MlConfig config) {
+        this.config = config.getEnsemble();
+    }
+
+    /**
+     * @return whether this ensemble call should evaluate {@code member}
+     */
+    public synchronized boolean shouldEvaluate(String member) {
+        Member stats = member(member);
+        if (!config.isAdaptive() || !stats.skipped) {
+            stats.evaluations++;
+            return true;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < config.getProbeRate()) {
+            stats.probes++;
+            stats.evaluations++;
+            return true;
+        }
+        stats.skips++;
+        return false;
+    }
+
+    public synchronized void recordLatency(String member, long nanos) {
+        Member stats = member(member);
+        double millis = nanos / 1e6;
+        stats.latencyMs = stats.timed == 0 ? millis : rolling(stats.latencyMs, millis);
+        stats.timed++;
+    }
+
+    /**
+     * Holds the members' predictions for {@code features} until the row they were made for commits.
+     */
+    public synchronized void recordPredictions(double[] features, Map<String, Double> predictions,
+            Map<String, Double> weights) {
+        pending.put(new FeatureKey(features.clone()), new Call(Map.copyOf(predictions), weights));
+    }
+
+    @EventListener
+    public void onTrainingSetUpdated(TrainingSetUpdatedEvent event) {
+        absorb(event.getSnapshot());
+    }
+
+    public synchronized List<EnsembleMemberStats> stats() {
+        List<EnsembleMemberStats> stats = new ArrayList<>();
+        members.forEach((name, member) -> stats.add(EnsembleMemberStats.builder()
+                .member(name)
+                .skipped(member.skipped)
+                .observations(member.observations)
+                .rollingMse(member.observations > 0 ? member.memberSq : null)
+                .ensembleMseWith(member.compared > 0 ? member.withSq : null)
+                .ensembleMseWithout(member.compared > 0 ? member.withoutSq : null)
+                .marginalGain(member.compared > 0 ? member.gain() : null)
+                .averageLatencyMs(member.timed > 0 ? member.latencyMs : null)
+                .evaluations(member.evaluations)
+                .skips(member.skips)
+                .probes(member.probes)
+                .build()));
+        return stats;
+    }
+
+    synchronized void absorb(TrainingSnapshot history) {
+        // the store only appends, so a snapshot extends the rows already absorbed
+        double[] row = new double[history.featureCount()];
+        for (int i = absorbed; i < history.size() && !pending.isEmpty(); i++) {
+            Call call = pending.remove(new FeatureKey(history.row(i, row)));
+            if (call != null) {
+                observe(call.predictions, call.weights, history.qualityScore(i));
+            }
+        }
+        absorbed = Math.max(absorbed, history.size());
+        reconsider();
+    }
+
+    private void observe(Map<String, Double> predictions, Map<String, Double> weights, double actual) {
+        double weightedSum = 0.0;
+        double totalWeight = 0.0;
+        for (Map.Entry<String, Double> prediction : predictions.entrySet()) {
+            double weight = weights.getOrDefault(prediction.getKey(), 0.0);
+            weightedSum += prediction.getValue() * weight;
+            totalWeight += weight;
+        }
+        double withError = weightedSum / totalWeight - actual;
+
+        for (Map.Entry<String, Double> prediction : predictions.entrySet()) {
+            Member stats = member(prediction.getKey());
+            double error = prediction.getValue() - actual;
+            stats.memberSq = stats.observations == 0 ? error * error : rolling(stats.memberSq, error * error);
+            stats.observations++;
+
+            // the marginal contribution needs at least one other member to compare against
+            double weight = weights.getOrDefault(prediction.getKey(), 0.0);
+            if (predictions.size() > 1 && totalWeight - weight > 0) {
+                double withoutError = (weightedSum - prediction.getValue() * weight) / (totalWeight - weight)
+                        - actual;
+                if (stats.compared == 0) {
+                    stats.withSq = withError * withError;
+                    stats.withoutSq = withoutError * withoutError;
+                } else {
+                    stats.withSq = rolling(stats.withSq, withError * withError);
+                    stats.withoutSq = rolling(stats.withoutSq, withoutError * withoutError);
+                }
+                stats.compared++;
+            }
+        }
+    }
+
+    private void reconsider() {
+        Member best = null;
+        boolean anyEvaluated = false;
+        for (Member member : members.values()) {
+            member.skipped = config.isAdaptive() && member.compared >= config.getMinObservations()
+                    && member.latencyMs >= config.getMinSkipLatencyMs()
+                    && member.gain() < config.getMinGainPerMs() * member.latencyMs;
+            anyEvaluated |= !member.skipped;
+            if (best == null || member.memberSq < best.memberSq) {
+                best = member;
+            }
+        }
+        // never skip every member; keep the most accurate one on its own
+        if (!anyEvaluated && best != null) {
+            best.skipped = false;
+        }
+    }
+
+    private double rolling(double average, double value) {
+        return config.getDecay() * average + (1.0 - config.getDecay()) * value;
+    }
+
+    private Member member(String name) {
+        return members.computeIfAbsent(name, key -> new Member());
+    }
+
+    private static class Member {
+        private boolean skipped;
+        private long observations;
+        private long compared;
+        private long timed;
+        private long evaluations;
+        private long skips;
+        private long probes;
+        private double memberSq;
+        private double withSq;
+        private double withoutSq;
+        private double latencyMs;
+
+        double gain() {
+            return (withoutSq - withSq) / Math.max(withSq, 1e-12);
+        }
+    }
+
+    private static class Call {
+        private final Map<String, Double> predictions;
+        private final Map<String, Double> weights;
+
+        Call(Map<String, Double> predictions, Map<String, Double> weights) {
+            this.predictions = predictions;
+            this.weights = weights;
+        }
+    }
+
+    private static class FeatureKey {
+        private final double[] values;
+        private final int hash;
+
+        FeatureKey(double[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FeatureKey && Arrays.equals(values, ((FeatureKey) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
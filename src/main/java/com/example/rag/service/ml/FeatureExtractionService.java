@@ -1,244 +1,410 @@
 package com.example.rag.service.ml;
 
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Service;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Computes the prompt features in two linear scans: one over the prompt and one over its lower-case
+ * form. Each scan tokenizes on whitespace and feeds a {@link MarkerAutomaton} holding every marker
+ * lexicon, so no marker is searched for separately and no regex is compiled per call.
+ * The features keep their original definitions: markers match as substrings, clause markers and
+ * domain words are case-sensitive, and split counts follow {@code String.split("\\s+")}.
+ */
 @Service
 @Slf4j
 public class FeatureExtractionService {
 
-    private static final Pattern SENTENCE_PATTERN = Pattern.compile("[.!?]+");
+    // matched against the lower-cased prompt
+    private static final String[] COMMON_VERBS = { "is", "are", "was", "were", "be", "been", "being",
+            "have", "has", "had", "do", "does", "did",
+            "write", "create", "make", "generate", "explain", "describe" };
+    private static final String[] COMMON_ADJECTIVES = { "good", "bad", "great", "small", "large", "new", "old",
+            "important", "specific", "detailed", "comprehensive" };
+    private static final String[] EXAMPLE_MARKERS = { "for example", "such as", "like", "e.g.", "for instance",
+            "including", "namely" };
+    private static final String[] CONSTRAINT_MARKERS = { "must", "should", "need to", "required", "limit",
+            "within", "between", "maximum", "minimum", "at least" };
+    private static final String[] CONTEXT_MARKERS = { "in", "for", "about", "regarding", "related to",
+            "in the context", "background", "scenario" };
+    private static final String[] CONTEXT_INDICATORS = { "in the context of", "regarding", "about", "for",
+            "related to", "concerning", "with respect to" };
+    private static final String[] ACTION_WORDS = { "explain", "describe", "analyze", "create", "write",
+            "generate", "summarize", "compare", "list", "provide" };
+    private static final String[] VAGUE_WORDS = { "thing", "stuff", "something", "somehow", "maybe" };
+
+    // matched against the prompt as written
+    private static final String[] CLAUSE_MARKERS = { ",", ";", ":", "and", "but", "or", "because", "when", "if" };
+    private static final String[] DOMAIN_WORDS = { "technical", "scientific", "business", "creative", "academic" };
+
+    private static final MarkerAutomaton.Builder LOWER_LEXICONS = MarkerAutomaton.builder();
+    private static final int[] VERB_IDS = LOWER_LEXICONS.add(COMMON_VERBS);
+    private static final int[] ADJECTIVE_IDS = LOWER_LEXICONS.add(COMMON_ADJECTIVES);
+    private static final int[] EXAMPLE_IDS = LOWER_LEXICONS.add(EXAMPLE_MARKERS);
+    private static final int[] CONSTRAINT_IDS = LOWER_LEXICONS.add(CONSTRAINT_MARKERS);
+    private static final int[] CONTEXT_IDS = LOWER_LEXICONS.add(CONTEXT_MARKERS);
+    private static final int[] CONTEXT_INDICATOR_IDS = LOWER_LEXICONS.add(CONTEXT_INDICATORS);
+    private static final int[] ACTION_IDS = LOWER_LEXICONS.add(ACTION_WORDS);
+    private static final int[] VAGUE_IDS = LOWER_LEXICONS.add(VAGUE_WORDS);
+    private static final MarkerAutomaton LOWER_MARKERS = LOWER_LEXICONS.build();
+
+    private static final MarkerAutomaton.Builder PROMPT_LEXICONS = MarkerAutomaton.builder();
+    private static final int[] CLAUSE_IDS = PROMPT_LEXICONS.add(CLAUSE_MARKERS);
+    private static final int[] DOMAIN_IDS = PROMPT_LEXICONS.add(DOMAIN_WORDS);
+    private static final MarkerAutomaton PROMPT_MARKERS = PROMPT_LEXICONS.build();
+
+    // confirm word-boundary matches on the candidates the automaton finds, with \b exactly as before
+    private static final Pattern VERB_PATTERN = Pattern.compile("\\b(?:" + String.join("|", COMMON_VERBS) + ")\\b");
+    private static final Pattern DOMAIN_PATTERN = Pattern.compile("\\b(?:" + String.join("|", DOMAIN_WORDS) + ")\\b");
+
+    // per-character classes, precomputed for ASCII
+    private static final int ASCII = 128;
+    private static final int SPLIT_SPACE = 1;
+    private static final int SENTENCE_DELIMITER = 2;
+    private static final int ASCII_LETTER = 4;
+    private static final int PUNCTUATION = 8;
+    private static final int LINE_TERMINATOR = 16;
+    private static final int[] ASCII_FLAGS = new int[ASCII];
+
+    static {
+        for (char c = 0; c < ASCII; c++) {
+            ASCII_FLAGS[c] = classify(c)
+                    | (c == '.' || c == '!' || c == '?' ? SENTENCE_DELIMITER : 0)
+                    | ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ? ASCII_LETTER : 0);
+        }
+    }
 
-    public Map<String, Double> extractFeatures(String prompt) {
-        Map<String, Double> features = new HashMap<>();
+    public FeatureVector extractFeatures(String prompt) {
+        String lower = prompt.toLowerCase();
+        PromptScan scan = scanPrompt(prompt);
+        LowerScan lowerScan = scanLower(lower, scan.hasLineTerminator);
+        FeatureVector features = new FeatureVector();
 
         // linguistic features - 1) Word Count 2) Sentence Count 3) Average Word Length
         // 4) Lexical Diversity 5) Punctuation Ratio
-        features.put("wordCount", (double) getWordCount(prompt));
-        features.put("sentenceCount", (double) getSentenceCount(prompt));
-        features.put("avgWordLength", getAverageWordLength(prompt));
-        features.put("lexicalDiversity", getLexicalDiversity(prompt));
-        features.put("punctuationRatio", getPunctuationRatio(prompt));
+        features.set(FeatureSchema.WORD_COUNT, scan.trimmedWordCount);
+        features.set(FeatureSchema.SENTENCE_COUNT, scan.sentenceCount);
+        features.set(FeatureSchema.AVG_WORD_LENGTH,
+                scan.splitWordCount == 0 ? 0.0 : (double) scan.asciiLetters / scan.splitWordCount);
+        features.set(FeatureSchema.LEXICAL_DIVERSITY, lowerScan.lexicalDiversity);
+        features.set(FeatureSchema.PUNCTUATION_RATIO,
+                prompt.length() > 0 ? (double) scan.punctuation / prompt.length() : 0.0);
 
         // semantic features - 1) Semantic Clarity 2) Context Relevance 3) Specificity
         // 4) Ambiguity
-        features.put("semanticClarity", calculateSemanticClarity(prompt));
-        features.put("contextRelevance", calculateRelevance(prompt));
-        features.put("specificityScore", calculateSemanticClarity(prompt));
-        features.put("ambiguityScore", calculateSemanticClarity(prompt));
+        double semanticClarity = calculateSemanticClarity(lowerScan.found);
+        features.set(FeatureSchema.SEMANTIC_CLARITY, semanticClarity);
+        features.set(FeatureSchema.CONTEXT_RELEVANCE, calculateRelevance(lowerScan.found, scan.hasDomainWord));
+        features.set(FeatureSchema.SPECIFICITY_SCORE, semanticClarity);
+        features.set(FeatureSchema.AMBIGUITY_SCORE, semanticClarity);
 
         // structural features - 1) Does prompt have context, constraints, examples 2)
         // Calculate the structural complexity
-        features.put("hasContext", hasContext(prompt) ? 1.0 : 0.0);
-        features.put("hasConstraints", hasConstraints(prompt) ? 1.0 : 0.0);
-        features.put("hasExamples", hasExamples(prompt) ? 1.0 : 0.0);
-        features.put("structuralComplexity", calculateStructuralComplexity(prompt));
+        boolean hasContext = any(lowerScan.found, CONTEXT_IDS);
+        features.set(FeatureSchema.HAS_CONTEXT, hasContext ? 1.0 : 0.0);
+        features.set(FeatureSchema.HAS_CONSTRAINTS, any(lowerScan.found, CONSTRAINT_IDS) ? 1.0 : 0.0);
+        features.set(FeatureSchema.HAS_EXAMPLES, any(lowerScan.found, EXAMPLE_IDS) ? 1.0 : 0.0);
+        features.set(FeatureSchema.STRUCTURAL_COMPLEXITY, calculateStructuralComplexity(scan));
 
         // completeness features - 1) Prompt has nouns, adjectives, verbs 2) Calculate
         // the completeness score
-        features.put("hasNouns", hasNouns(prompt) ? 1.0 : 0.0);
-        features.put("hasAdjectives", hasAdjectives(prompt) ? 1.0 : 0.0);
-        features.put("hasVerbs", hasVerbs(prompt) ? 1.0 : 0.0);
-        features.put("completenessScore", calculateCompleteness(prompt));
-
-        log.debug("Extracted {} features from prompt", features.size());
+        boolean hasNouns = scan.splitWordCount > 2;
+        boolean hasAdjectives = any(lowerScan.found, ADJECTIVE_IDS);
+        features.set(FeatureSchema.HAS_NOUNS, hasNouns ? 1.0 : 0.0);
+        features.set(FeatureSchema.HAS_ADJECTIVES, hasAdjectives ? 1.0 : 0.0);
+        features.set(FeatureSchema.HAS_VERBS, lowerScan.hasVerbs ? 1.0 : 0.0);
+        features.set(FeatureSchema.COMPLETENESS_SCORE,
+                calculateCompleteness(lowerScan.hasVerbs, hasNouns, hasAdjectives, hasContext));
+
+        log.debug("Extracted {} features from prompt", FeatureSchema.SIZE);
         return features;
     }
 
-    private double calculateCompleteness(String prompt) {
-        // Prompts that dont have verbs, nouns, adjectives and context are not scored
-        double score = 0.0;
-        if (hasVerbs(prompt))
-            score += 0.25;
-        if (hasNouns(prompt))
-            score += 0.25;
-        if (hasAdjectives(prompt))
-            score += 0.25;
-        if (hasContext(prompt))
-            score += 0.25;
-        return score;
-    }
-
-    private boolean hasVerbs(String prompt) {
-        String[] commonVerbs = { "is", "are", "was", "were", "be", "been", "being",
-                "have", "has", "had", "do", "does", "did",
-                "write", "create", "make", "generate", "explain", "describe" };
-        for (String verb : commonVerbs) {
-            if (prompt.toLowerCase().matches(".*\\b" + verb + "\\b.*")) {
-                return true;
-            }
+    /**
+     * Counts words, sentences, letters and punctuation and finds the case-sensitive markers.
+     */
+    private static PromptScan scanPrompt(String prompt) {
+        PromptScan scan = new PromptScan();
+        int length = prompt.length();
+
+        // bounds of prompt.trim(), which the word count is taken over
+        int trimStart = 0;
+        int trimEnd = length;
+        while (trimStart < trimEnd && prompt.charAt(trimStart) <= ' ') {
+            trimStart++;
+        }
+        while (trimEnd > trimStart && prompt.charAt(trimEnd - 1) <= ' ') {
+            trimEnd--;
         }
-        return false;
-    }
 
-    private boolean hasAdjectives(String prompt) {
-        String[] commonAdjectives = { "good", "bad", "great", "small", "large", "new", "old",
-                "important", "specific", "detailed", "comprehensive" };
-        for (String adj : commonAdjectives) {
-            if (prompt.toLowerCase().contains(adj)) {
-                return true;
+        boolean[] found = new boolean[PROMPT_MARKERS.markerCount()];
+        Matcher domain = null;
+        int tokens = 0;
+        int trimmedTokens = 0;
+        int sentenceRuns = 0;
+        boolean previousSpace = true;
+        boolean previousDelimiter = false;
+        int state = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = prompt.charAt(i);
+
+            int flags = c < ASCII ? ASCII_FLAGS[c] : classify(c);
+
+            boolean space = (flags & SPLIT_SPACE) != 0;
+            if (!space && previousSpace) {
+                tokens++;
             }
-        }
-        return false;
-    }
+            // trim() can cut into a token that starts with control characters
+            if (!space && (previousSpace || i == trimStart) && i >= trimStart && i < trimEnd) {
+                trimmedTokens++;
+            }
+            previousSpace = space;
 
-    private boolean hasNouns(String prompt) {
-        // search for common nouns
-        return prompt.split("\\s+").length > 2;
-    }
+            boolean delimiter = (flags & SENTENCE_DELIMITER) != 0;
+            if (delimiter && !previousDelimiter) {
+                sentenceRuns++;
+            }
+            previousDelimiter = delimiter;
 
-    private Double calculateStructuralComplexity(String prompt) {
-        double score = 0.0;
+            if ((flags & ASCII_LETTER) != 0) {
+                scan.asciiLetters++;
+            }
+            if ((flags & PUNCTUATION) != 0) {
+                scan.punctuation++;
+            }
+            if ((flags & LINE_TERMINATOR) != 0) {
+                scan.hasLineTerminator = true;
+            }
 
-        // sentence structure
-        int sentenceCount = getSentenceCount(prompt);
-        score += Math.min(0.3, sentenceCount * 0.1);
+            state = PROMPT_MARKERS.next(state, c);
+            for (int id : PROMPT_MARKERS.matches(state)) {
+                found[id] = true;
+                if (!scan.hasDomainWord && contains(DOMAIN_IDS, id)) {
+                    if (domain == null) {
+                        domain = DOMAIN_PATTERN.matcher(prompt).useTransparentBounds(true);
+                    }
+                    int end = i + 1;
+                    scan.hasDomainWord = domain.region(end - PROMPT_MARKERS.marker(id).length(), end).matches();
+                }
+            }
+        }
 
-        // clause indicators
-        String[] clauseMarkers = { ",", ";", ":", "and", "but", "or", "because", "when", "if" };
-        for (String marker : clauseMarkers) {
-            if (prompt.contains(marker)) {
-                score += 0.05;
+        // the domain regex used to be matched as ".*\b(...)\b.*", which fails across line breaks
+        scan.hasDomainWord &= !scan.hasLineTerminator;
+
+        // prompt.trim().split("\\s+").length, where an empty prompt is one word
+        scan.trimmedWordCount = Math.max(1, trimmedTokens);
+        // prompt.split("\\s+").length keeps a leading empty word but drops trailing ones
+        boolean leadingSpace = length > 0 && isSplitWhitespace(prompt.charAt(0));
+        scan.splitWordCount = length == 0 ? 1 : tokens == 0 ? 0 : tokens + (leadingSpace ? 1 : 0);
+        // SENTENCE_PATTERN.split(prompt).length, at least 1
+        boolean endsWithDelimiter = length > 0 && previousDelimiter;
+        scan.sentenceCount = sentenceRuns == 0 ? 1 : Math.max(1, sentenceRuns + 1 - (endsWithDelimiter ? 1 : 0));
+
+        for (int i = 0; i < CLAUSE_IDS.length; i++) {
+            if (found[CLAUSE_IDS[i]]) {
+                scan.clauseMarkers++;
             }
         }
-        return Math.min(1.0, score);
+        return scan;
     }
 
-    private boolean hasExamples(String prompt) {
-        String[] exampleMarkers = { "for example", "such as", "like", "e.g.", "for instance",
-                "including", "namely" };
-        for (String marker : exampleMarkers) {
-            if (prompt.toLowerCase().contains(marker)) {
-                return true;
+    /**
+     * Finds the lexicon markers in the lower-cased prompt and measures its lexical diversity.
+     */
+    private static LowerScan scanLower(String lower, boolean hasLineTerminator) {
+        LowerScan scan = new LowerScan();
+        scan.found = new boolean[LOWER_MARKERS.markerCount()];
+        Matcher verbs = null;
+        Set<String> uniqueWords = new HashSet<>();
+        int words = 0;
+        int tokenStart = -1;
+        int state = 0;
+
+        int length = lower.length();
+        for (int i = 0; i < length; i++) {
+            char c = lower.charAt(i);
+
+            if (isSplitWhitespace(c)) {
+                if (tokenStart >= 0) {
+                    uniqueWords.add(lower.substring(tokenStart, i));
+                    words++;
+                    tokenStart = -1;
+                }
+            } else if (tokenStart < 0) {
+                tokenStart = i;
+            }
+
+            state = LOWER_MARKERS.next(state, c);
+            for (int id : LOWER_MARKERS.matches(state)) {
+                scan.found[id] = true;
+                // verbs have to stand alone, and the old ".*\bverb\b.*" never matched across line breaks
+                if (!scan.hasVerbs && !hasLineTerminator && contains(VERB_IDS, id)) {
+                    if (verbs == null) {
+                        verbs = VERB_PATTERN.matcher(lower).useTransparentBounds(true);
+                    }
+                    int end = i + 1;
+                    scan.hasVerbs = verbs.region(end - LOWER_MARKERS.marker(id).length(), end).matches();
+                }
             }
         }
-        return false;
-    }
+        if (tokenStart >= 0) {
+            uniqueWords.add(lower.substring(tokenStart));
+            words++;
+        }
 
-    private boolean hasConstraints(String prompt) {
-        String[] constraintMarkers = { "must", "should", "need to", "required", "limit",
-                "within", "between", "maximum", "minimum", "at least" };
-        for (String marker : constraintMarkers) {
-            if (prompt.toLowerCase().contains(marker)) {
-                return true;
+        // same counting as lower.split("\\s+"): a leading separator yields one empty word,
+        // a prompt of only separators yields none, and an empty prompt is a single empty word
+        if (length == 0) {
+            scan.lexicalDiversity = 1.0;
+        } else if (words == 0) {
+            scan.lexicalDiversity = 0.0;
+        } else {
+            if (isSplitWhitespace(lower.charAt(0))) {
+                uniqueWords.add("");
+                words++;
             }
+            scan.lexicalDiversity = (double) uniqueWords.size() / words;
         }
-        return false;
+        return scan;
     }
 
-    private boolean hasContext(String prompt) {
-        String[] contextMarkers = { "in", "for", "about", "regarding", "related to",
-                "in the context", "background", "scenario" };
-        for (String marker : contextMarkers) {
-            if (prompt.toLowerCase().contains(marker)) {
-                return true;
-            }
+    private static double calculateCompleteness(boolean hasVerbs, boolean hasNouns, boolean hasAdjectives,
+            boolean hasContext) {
+        // Prompts that dont have verbs, nouns, adjectives and context are not scored
+        double score = 0.0;
+        if (hasVerbs)
+            score += 0.25;
+        if (hasNouns)
+            score += 0.25;
+        if (hasAdjectives)
+            score += 0.25;
+        if (hasContext)
+            score += 0.25;
+        return score;
+    }
+
+    private static double calculateStructuralComplexity(PromptScan scan) {
+        double score = 0.0;
+
+        // sentence structure
+        score += Math.min(0.3, scan.sentenceCount * 0.1);
+
+        // clause indicators
+        for (int i = 0; i < scan.clauseMarkers; i++) {
+            score += 0.05;
         }
-        return false;
+        return Math.min(1.0, score);
     }
 
-    private Double calculateRelevance(String prompt) {
+    private static double calculateRelevance(boolean[] found, boolean hasDomainWord) {
         double score = 0.3;
 
         // Context indicators - 15% of the score if any of the indicators are present
-        String[] contextIndicators = { "in the context of", "regarding", "about", "for",
-                "related to", "concerning", "with respect to" };
-        for (String indicator : contextIndicators) {
-            if (prompt.toLowerCase().contains(indicator)) {
+        for (int id : CONTEXT_INDICATOR_IDS) {
+            if (found[id]) {
                 score += 0.15;
             }
         }
 
         // Use of domain specific words - 10% of the score if any of the words are
         // present
-        if (prompt.matches(".*\\b(technical|scientific|business|creative|academic)\\b.*")) {
+        if (hasDomainWord) {
             score += 0.1;
         }
 
         return Math.min(1.0, score);
     }
 
-    private Double calculateSemanticClarity(String prompt) {
+    private static double calculateSemanticClarity(boolean[] found) {
         double score = 0.5;
         // example of using action words to produce outputs with more clarity
-        String[] actionWords = { "explain", "describe", "analyze", "create", "write",
-                "generate", "summarize", "compare", "list", "provide" };
-        for (String word : actionWords) {
-            if (prompt.toLowerCase().contains(word)) {
+        for (int id : ACTION_IDS) {
+            if (found[id]) {
                 score += 0.1;
             }
         }
         // vice versa for vague outputs
-        String[] vagueWords = { "thing", "stuff", "something", "somehow", "maybe" };
-        for (String word : vagueWords) {
-            if (prompt.toLowerCase().contains(word)) {
+        for (int id : VAGUE_IDS) {
+            if (found[id]) {
                 score -= 0.1;
             }
         }
         return Math.max(0.0, Math.min(1.0, score));
     }
 
-    public double calculateQualityScore(Map<String, Double> features, Map<String, Double> weights) {
+    public double calculateQualityScore(FeatureVector features, FeatureVector weights) {
         double score = 0.0;
         double totalWeight = 0.0;
 
-        for (Map.Entry<String, Double> entry : features.entrySet()) {
-            String featureName = entry.getKey();
-            Double featureValue = entry.getValue();
-            Double weight = weights.getOrDefault(featureName, 0.05);
-
-            score += featureValue * weight;
+        for (int i = 0; i < FeatureSchema.SIZE; i++) {
+            double weight = weights.get(i);
+            score += features.get(i) * weight;
             totalWeight += weight;
         }
 
         return totalWeight > 0 ? score / totalWeight : 0.0;
     }
 
-    private Double getPunctuationRatio(String prompt) {
-        int punctuationCount = 0;
-        for (char c : prompt.toCharArray()) {
-            if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c)) {
-                punctuationCount++;
+    private static boolean any(boolean[] found, int[] ids) {
+        for (int id : ids) {
+            if (found[id]) {
+                return true;
             }
         }
-        return prompt.length() > 0 ? (double) punctuationCount / prompt.length() : 0.0;
+        return false;
     }
 
-    private Double getLexicalDiversity(String prompt) {
-        String[] words = prompt.toLowerCase().split("\\s+");
-        if (words.length == 0)
-            return 0.0;
-
-        Set<String> uniqueWords = new HashSet<>(Arrays.asList(words));
-        return (double) uniqueWords.size() / words.length;
+    private static boolean contains(int[] ids, int id) {
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private Double getAverageWordLength(String prompt) {
-        String[] words = prompt.split("\\s+");
-        if (words.length == 0)
-            return 0.0;
+    // the \s of java.util.regex
+    private static boolean isSplitWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 
-        double totalLength = 0;
-        for (String word : words) {
-            totalLength += word.replaceAll("[^a-zA-Z]", "").length();
+    private static int classify(char c) {
+        int flags = 0;
+        if (isSplitWhitespace(c)) {
+            flags |= SPLIT_SPACE;
+        }
+        // punctuation as counted by the punctuation ratio: anything but letters, digits and whitespace
+        if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c)) {
+            flags |= PUNCTUATION;
+        }
+        // characters '.' does not match
+        if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+            flags |= LINE_TERMINATOR;
         }
-        return totalLength / words.length;
+        return flags;
     }
 
-    private int getSentenceCount(String prompt) {
-        String[] sentences = SENTENCE_PATTERN.split(prompt);
-        return Math.max(1, sentences.length);
+    private static class PromptScan {
+        private int trimmedWordCount;
+        private int splitWordCount;
+        private int sentenceCount;
+        private int asciiLetters;
+        private int punctuation;
+        private int clauseMarkers;
+        private boolean hasLineTerminator;
+        private boolean hasDomainWord;
     }
 
-    private double getWordCount(String prompt) {
-        return prompt.trim().split("\\s+").length;
+    private static class LowerScan {
+        private boolean[] found;
+        private boolean hasVerbs;
+        private double lexicalDiversity;
     }
 }
@@ -0,0 +1,73 @@
+package com.example.rag.service.ml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The prompt features, in the fixed column order used by {@link FeatureVector}, the training set
+ * and every model. The names are the keys used in the API and in persisted feature maps.
+ */
+public enum FeatureSchema {
+    // linguistic features
+    WORD_COUNT("wordCount", 0.04),
+    SENTENCE_COUNT("sentenceCount", 0.03),
+    AVG_WORD_LENGTH("avgWordLength", 0.02),
+    LEXICAL_DIVERSITY("lexicalDiversity", 0.08),
+    PUNCTUATION_RATIO("punctuationRatio", 0.02),
+
+    // semantic features
+    SEMANTIC_CLARITY("semanticClarity", 0.15),
+    CONTEXT_RELEVANCE("contextRelevance", 0.15),
+    SPECIFICITY_SCORE("specificityScore", 0.12),
+    AMBIGUITY_SCORE("ambiguityScore", 0.10),
+
+    // structural features
+    HAS_CONTEXT("hasContext", 0.07),
+    HAS_CONSTRAINTS("hasConstraints", 0.06),
+    HAS_EXAMPLES("hasExamples", 0.01),
+    STRUCTURAL_COMPLEXITY("structuralComplexity", 0.05),
+
+    // completeness features
+    HAS_VERBS("hasVerbs", 0.01),
+    HAS_NOUNS("hasNouns", 0.01),
+    HAS_ADJECTIVES("hasAdjectives", 0.01),
+    COMPLETENESS_SCORE("completenessScore", 0.08);
+
+    public static final int SIZE = values().length;
+
+    private static final FeatureSchema[] FEATURES = values();
+    private static final Map<String, FeatureSchema> BY_NAME = new HashMap<>();
+
+    static {
+        for (FeatureSchema feature : FEATURES) {
+            BY_NAME.put(feature.featureName, feature);
+        }
+    }
+
+    private final String featureName;
+    private final double defaultWeight;
+
+    FeatureSchema(String featureName, double defaultWeight) {
+        this.featureName = featureName;
+        this.defaultWeight = defaultWeight;
+    }
+
+    public String getFeatureName() {
+        return featureName;
+    }
+
+    public double getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    public static FeatureSchema at(int index) {
+        return FEATURES[index];
+    }
+
+    /**
+     * @return the feature with this name, or null if it is not part of the schema
+     */
+    public static FeatureSchema byName(String featureName) {
+        return BY_NAME.get(featureName);
+    }
+}
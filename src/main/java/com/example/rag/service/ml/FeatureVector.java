@@ -0,0 +1,104 @@
+package com.example.rag.service.ml;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Feature values (or per-feature weights) indexed by {@link FeatureSchema} ordinal.
+ * The map form is only for the API and persistence edges.
+ */
+public final class FeatureVector {
+    private final double[] values;
+
+    public FeatureVector() {
+        this(new double[FeatureSchema.SIZE]);
+    }
+
+    private FeatureVector(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Wraps an array in schema order without copying it.
+     */
+    public static FeatureVector wrap(double[] values) {
+        if (values.length != FeatureSchema.SIZE) {
+            throw new IllegalArgumentException("Expected " + FeatureSchema.SIZE + " features, got " + values.length);
+        }
+        return new FeatureVector(values);
+    }
+
+    /**
+     * Reads a feature map; missing features are 0 and names outside the schema are ignored.
+     */
+    public static FeatureVector fromMap(Map<String, Double> features) {
+        FeatureVector vector = new FeatureVector();
+        if (features != null) {
+            vector.putAll(features);
+        }
+        return vector;
+    }
+
+    public double get(FeatureSchema feature) {
+        return values[feature.ordinal()];
+    }
+
+    public double get(int index) {
+        return values[index];
+    }
+
+    public void set(FeatureSchema feature, double value) {
+        values[feature.ordinal()] = value;
+    }
+
+    public void set(int index, double value) {
+        values[index] = value;
+    }
+
+    /**
+     * Overwrites the features named in {@code features}, ignoring names outside the schema.
+     */
+    public void putAll(Map<String, Double> features) {
+        for (Map.Entry<String, Double> entry : features.entrySet()) {
+            FeatureSchema feature = FeatureSchema.byName(entry.getKey());
+            if (feature != null && entry.getValue() != null) {
+                values[feature.ordinal()] = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * The backing array, in schema order. Callers must not modify it.
+     */
+    public double[] values() {
+        return values;
+    }
+
+    public FeatureVector copy() {
+        return new FeatureVector(values.clone());
+    }
+
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            map.put(FeatureSchema.at(i).getFeatureName(), values[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FeatureVector vector && Arrays.equals(values, vector.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rag.model.ml.FeatureWeight;
+import com.example.rag.repository.ml.FeatureWeightRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The live learned feature weights, shared by all refinement sessions.
+ * Weights are held as double bits in an {@link AtomicLongArray} in {@link FeatureSchema} order and
+ * updated with per-feature compare-and-set, so concurrent sessions never lose each other's steps.
+ * Changes reach the {@code feature_weights} table through a periodic write-behind flush that
+ * reads the table once and saves only the dirty rows, keeping their update counts and min/max.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FeatureWeightStore {
+
+    private static final long POSITIVE_INFINITY_BITS = Double.doubleToLongBits(Double.POSITIVE_INFINITY);
+    private static final long NEGATIVE_INFINITY_BITS = Double.doubleToLongBits(Double.NEGATIVE_INFINITY);
+
+    private final FeatureWeightRepository featureWeightRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicLongArray weights = new AtomicLongArray(FeatureSchema.SIZE);
+    // updates since the last flush, and the lowest and highest weights they produced
+    private final AtomicIntegerArray pendingUpdates = new AtomicIntegerArray(FeatureSchema.SIZE);
+    private final AtomicLongArray pendingMin = new AtomicLongArray(FeatureSchema.SIZE);
+    private final AtomicLongArray pendingMax = new AtomicLongArray(FeatureSchema.SIZE);
+
+    {
+        for (FeatureSchema feature : FeatureSchema.values()) {
+            weights.set(feature.ordinal(), Double.doubleToLongBits(feature.getDefaultWeight()));
+            resetPending(feature.ordinal());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        for (FeatureWeight fw : featureWeightRepository.findAll()) {
+            FeatureSchema feature = FeatureSchema.byName(fw.getFeatureName());
+            if (feature != null) {
+                weights.set(feature.ordinal(), Double.doubleToLongBits(fw.getWeight()));
+            }
+        }
+    }
+
+    public double get(FeatureSchema feature) {
+        return Double.longBitsToDouble(weights.get(feature.ordinal()));
+    }
+
+    /**
+     * @return a copy of the current weights
+     */
+    public FeatureVector snapshot() {
+        double[] values = new double[FeatureSchema.SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.longBitsToDouble(weights.get(i));
+        }
+        return FeatureVector.wrap(values);
+    }
+
+    /**
+     * Atomically moves a weight by {@code delta}, clipped to [0, 1].
+     *
+     * @return the new weight
+     */
+    public double add(FeatureSchema feature, double delta) {
+        int i = feature.ordinal();
+        long current;
+        double updated;
+        do {
+            current = weights.get(i);
+            updated = Math.max(0.0, Math.min(1.0, Double.longBitsToDouble(current) + delta));
+        } while (!weights.compareAndSet(i, current, Double.doubleToLongBits(updated)));
+
+        lower(pendingMin, i, updated);
+        raise(pendingMax, i, updated);
+        pendingUpdates.incrementAndGet(i);
+        return updated;
+    }
+
+    int pendingUpdates(FeatureSchema feature) {
+        return pendingUpdates.get(feature.ordinal());
+    }
+
+    /**
+     * Writes the weights changed since the last flush in one transaction.
+     */
+    @Scheduled(fixedDelayString = "${ml.weights.flush-interval-millis:5000}")
+    public void flush() {
+        // claim the pending counts first so updates landing mid-flush go to the next one
+        int[] updates = new int[FeatureSchema.SIZE];
+        double[] min = new double[FeatureSchema.SIZE];
+        double[] max = new double[FeatureSchema.SIZE];
+        boolean dirty = false;
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = pendingUpdates.getAndSet(i, 0);
+            if (updates[i] > 0) {
+                min[i] = Double.longBitsToDouble(pendingMin.getAndSet(i, POSITIVE_INFINITY_BITS));
+                max[i] = Double.longBitsToDouble(pendingMax.getAndSet(i, NEGATIVE_INFINITY_BITS));
+                dirty = true;
+            }
+        }
+        if (!dirty) {
+            return;
+        }
+
+        try {
+            int saved = transactionTemplate.execute(status -> {
+                Map<String, FeatureWeight> rows = new HashMap<>();
+                for (FeatureWeight fw : featureWeightRepository.findAll()) {
+                    rows.put(fw.getFeatureName(), fw);
+                }
+                List<FeatureWeight> changed = new ArrayList<>();
+                for (int i = 0; i < updates.length; i++) {
+                    if (updates[i] == 0) {
+                        continue;
+                    }
+                    FeatureSchema feature = FeatureSchema.at(i);
+                    FeatureWeight fw = rows.get(feature.getFeatureName());
+                    if (fw == null) {
+                        fw = new FeatureWeight();
+                        fw.setFeatureName(feature.getFeatureName());
+                    }
+                    fw.applyUpdates(get(feature), updates[i], min[i], max[i]);
+                    changed.add(fw);
+                }
+                featureWeightRepository.saveAll(changed);
+                return changed.size();
+            });
+            log.debug("Flushed {} feature weights", saved);
+        } catch (RuntimeException e) {
+            // put the claimed updates back so the next flush retries them
+            for (int i = 0; i < updates.length; i++) {
+                if (updates[i] > 0) {
+                    restorePending(i, updates[i], min[i], max[i]);
+                }
+            }
+            log.error("Failed to flush feature weights: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void resetPending(int i) {
+        pendingMin.set(i, POSITIVE_INFINITY_BITS);
+        pendingMax.set(i, NEGATIVE_INFINITY_BITS);
+    }
+
+    private void restorePending(int i, int updates, double min, double max) {
+        lower(pendingMin, i, min);
+        raise(pendingMax, i, max);
+        pendingUpdates.addAndGet(i, updates);
+    }
+
+    private static void lower(AtomicLongArray bits, int i, double value) {
+        bits.accumulateAndGet(i, Double.doubleToLongBits(value),
+                (a, b) -> Double.longBitsToDouble(b) < Double.longBitsToDouble(a) ? b : a);
+    }
+
+    private static void raise(AtomicLongArray bits, int i, double value) {
+        bits.accumulateAndGet(i, Double.doubleToLongBits(value),
+                (a, b) -> Double.longBitsToDouble(b) > Double.longBitsToDouble(a) ? b : a);
+    }
+}
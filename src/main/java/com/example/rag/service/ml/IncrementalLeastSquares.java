@@ -0,0 +1,215 @@
+package com.example.rag.service.ml;
+
+import java.util.function.UnaryOperator;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+/**
+ * Least-squares model (with intercept) kept up to date from the sufficient statistics XᵀX and Xᵀy.
+ * New history rows are absorbed in O(d²) each, and coefficients are solved once per history
+ * version, so a prediction is a dot product whatever the size of the history.
+ */
+public class IncrementalLeastSquares {
+
+    private final UnaryOperator<double[]> expansion;
+
+    private double[][] xtx;
+    private double[] xty;
+    private int absorbed;
+    // identity of the absorbed rows, see TrainingSnapshot#rowHash
+    private long maxId;
+    private long checksum;
+    // coefficients for the history version they were solved on, read without locking
+    private volatile Fit fit;
+
+    /**
+     * @param expansion maps a row of {@link FeatureSchema} features to the model's
+     *                  regressors, e.g. identity for a linear model
+     */
+    public IncrementalLeastSquares(UnaryOperator<double[]> expansion) {
+        this.expansion = expansion;
+    }
+
+    /**
+     * Predicts {@code features} with a fit covering at least {@code history}, absorbing any rows
+     * not seen yet first. A session still holding an older snapshot gets the newer fit, and
+     * callers on an already fitted version don't synchronize.
+     *
+     * @return the prediction, or NaN while there are fewer samples than regressors
+     */
+    public double predict(double[] features, TrainingSnapshot history) {
+        Fit current = fit;
+        if (current == null || current.version < history.getVersion()) {
+            current = refit(history);
+        }
+        return predictWith(current.coefficients, features);
+    }
+
+    /**
+     * Fits the same kind of model on the given history rows only, leaving this one untouched;
+     * used to cross-validate it.
+     *
+     * @return the coefficients, or null while there are fewer rows than regressors
+     */
+    public double[] fitRows(TrainingSnapshot history, int[] rows) {
+        double[][] rowXtx = null;
+        double[] rowXty = null;
+        double[] row = new double[history.featureCount()];
+        for (int i : rows) {
+            double[] x = expansion.apply(history.row(i, row));
+            if (rowXtx == null) {
+                rowXtx = new double[x.length + 1][x.length + 1];
+                rowXty = new double[x.length + 1];
+            }
+            addSample(rowXtx, rowXty, x, history.qualityScore(i));
+        }
+        return rowXty != null && rows.length >= rowXty.length ? solve(rowXtx, rowXty) : null;
+    }
+
+    /**
+     * @return the prediction of {@code coefficients} (as solved by this model), NaN when null
+     */
+    public double predictWith(double[] coefficients, double[] features) {
+        if (coefficients == null) {
+            return Double.NaN;
+        }
+        double[] x = expansion.apply(features);
+        double prediction = coefficients[0];
+        for (int j = 0; j < x.length; j++) {
+            prediction += coefficients[j + 1] * x[j];
+        }
+        return prediction;
+    }
+
+    public synchronized int getSampleCount() {
+        return absorbed;
+    }
+
+    /**
+     * @return a copy of the sufficient statistics and current fit, or null before any row
+     */
+    public synchronized State exportState() {
+        if (xty == null) {
+            return null;
+        }
+        double[][] xtxCopy = new double[xtx.length][];
+        for (int a = 0; a < xtx.length; a++) {
+            xtxCopy[a] = xtx[a].clone();
+        }
+        Fit current = fit;
+        return new State(current != null ? current.version : absorbed, absorbed, maxId, checksum, xtxCopy,
+                xty.clone(),
+                current != null && current.coefficients != null ? current.coefficients.clone() : null);
+    }
+
+    /**
+     * Resumes from saved statistics, so only rows added since are absorbed. Ignored once the model
+     * has absorbed rows itself, or unless the first {@code state.absorbed} rows of {@code history}
+     * are the rows the state was summed over. They can differ after rows were deleted or edited,
+     * or when rows committed out of id order, since a restart reloads them by id.
+     *
+     * @return whether the state was taken
+     */
+    public synchronized boolean restore(State state, TrainingSnapshot history) {
+        if (absorbed > 0 || state.absorbed > history.size() || state.trainingVersion > history.getVersion()
+                || state.maxId != history.maxId(state.absorbed)
+                || state.checksum != history.checksum(state.absorbed)) {
+            return false;
+        }
+        xtx = state.xtx;
+        xty = state.xty;
+        absorbed = state.absorbed;
+        maxId = state.maxId;
+        checksum = state.checksum;
+        fit = new Fit(state.trainingVersion, state.coefficients);
+        return true;
+    }
+
+    private synchronized Fit refit(TrainingSnapshot history) {
+        if (fit != null && fit.version >= history.getVersion()) {
+            return fit;
+        }
+        absorb(history);
+        // no coefficients while there are fewer samples than regressors plus the intercept
+        double[] coefficients = xty != null && absorbed >= xty.length ? solve(xtx, xty) : null;
+        fit = new Fit(history.getVersion(), coefficients);
+        return fit;
+    }
+
+    private void absorb(TrainingSnapshot history) {
+        // the store only appends, so this history extends the rows already absorbed
+        double[] row = new double[history.featureCount()];
+        for (int i = absorbed; i < history.size(); i++) {
+            double[] x = expansion.apply(history.row(i, row));
+            if (xtx == null) {
+                xtx = new double[x.length + 1][x.length + 1];
+                xty = new double[x.length + 1];
+            }
+            addSample(xtx, xty, x, history.qualityScore(i));
+            maxId = Math.max(maxId, history.id(i));
+            checksum += history.rowHash(i);
+        }
+        absorbed = history.size();
+    }
+
+    static void addSample(double[][] xtx, double[] xty, double[] x, double y) {
+        int d = x.length + 1;
+        // regressor 0 is the intercept
+        for (int a = 0; a < d; a++) {
+            double xa = a == 0 ? 1.0 : x[a - 1];
+            xty[a] += xa * y;
+            for (int b = a; b < d; b++) {
+                double xb = b == 0 ? 1.0 : x[b - 1];
+                xtx[a][b] += xa * xb;
+            }
+        }
+    }
+
+    static double[] solve(double[][] xtx, double[] xty) {
+        int d = xty.length;
+        double[][] full = new double[d][d];
+        for (int a = 0; a < d; a++) {
+            for (int b = a; b < d; b++) {
+                full[a][b] = xtx[a][b];
+                full[b][a] = xtx[a][b];
+            }
+        }
+        // pseudo-inverse, so constant or collinear features don't make the system unsolvable
+        return new SingularValueDecomposition(new Array2DRowRealMatrix(full, false))
+                .getSolver()
+                .solve(new ArrayRealVector(xty, false))
+                .toArray();
+    }
+
+    private static class Fit {
+        private final long version;
+        private final double[] coefficients;
+
+        Fit(long version, double[] coefficients) {
+            this.version = version;
+            this.coefficients = coefficients;
+        }
+    }
+
+    /**
+     * Persistable model state: the sufficient statistics over the first {@code absorbed} history
+     * rows and the coefficients solved for {@code trainingVersion}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class State {
+        private final long trainingVersion;
+        private final int absorbed;
+        // identity of the absorbed rows, checked against the history on restore
+        private final long maxId;
+        private final long checksum;
+        private final double[][] xtx;
+        private final double[] xty;
+        private final double[] coefficients;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coalesces single-row predictions from concurrent callers into one forward pass.
+ * A worker thread takes the oldest pending row, waits up to {@code maxWait} after it was queued
+ * for more rows (or until {@code maxBatchSize}), runs the batch and completes every caller.
+ * Under load the window is already over when the worker gets to a row, so batches form from
+ * whatever queued up during the previous pass without adding any wait.
+ */
+@Slf4j
+public class InferenceBatcher implements AutoCloseable {
+
+    private final Function<double[][], double[]> forward;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    // set once the worker stops taking rows; it then fails everything still queued
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder forwardNanos = new LongAdder();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    /**
+     * @param forward maps a batch of rows to one prediction per row
+     */
+    public InferenceBatcher(String name, Function<double[][], double[]> forward, int maxBatchSize,
+            long maxWait, TimeUnit unit) {
+        this.forward = forward;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public double predict(double[] features) {
+        Pending pending = new Pending(features);
+        queue.add(pending);
+        // the worker drains the queue after closing, so a row it can no longer take is still ours
+        if (closed && queue.remove(pending)) {
+            throw new IllegalStateException("Inference batcher closed");
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    public BatchStats getStats() {
+        BatchStats stats = new BatchStats();
+        long batchCount = batches.sum();
+        long rowCount = rows.sum();
+        long forwardTotal = forwardNanos.sum();
+        stats.setBatches(batchCount);
+        stats.setRows(rowCount);
+        stats.setMaxBatchSize(maxBatchSize);
+        stats.setMaxWaitMicros(TimeUnit.NANOSECONDS.toMicros(maxWaitNanos));
+        stats.setLargestBatch(largestBatch.get());
+        stats.setAverageBatchSize(batchCount > 0 ? (double) rowCount / batchCount : 0.0);
+        stats.setAverageQueueWaitMicros(rowCount > 0 ? queueWaitNanos.sum() / 1000.0 / rowCount : 0.0);
+        stats.setAverageForwardMicros(batchCount > 0 ? forwardTotal / 1000.0 / batchCount : 0.0);
+        stats.setRowsPerForwardSecond(forwardTotal > 0 ? rowCount * 1e9 / forwardTotal : 0.0);
+        return stats;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Pending first = queue.take();
+                batch.add(first);
+                long deadline = first.queuedAt + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                runBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // fail whatever is left rather than leave callers blocked
+            closed = true;
+            queue.drainTo(batch);
+            batch.forEach(p -> p.result.completeExceptionally(new IllegalStateException("Inference batcher closed")));
+        }
+    }
+
+    private void runBatch(List<Pending> batch) {
+        long start = System.nanoTime();
+        double[][] input = new double[batch.size()][];
+        long waited = 0;
+        for (int i = 0; i < input.length; i++) {
+            Pending pending = batch.get(i);
+            input[i] = pending.features;
+            waited += start - pending.queuedAt;
+        }
+        double[] output;
+        try {
+            output = forward.apply(input);
+            if (output == null || output.length < input.length) {
+                throw new IllegalStateException("Forward pass returned "
+                        + (output == null ? 0 : output.length) + " predictions for " + input.length + " rows");
+            }
+        } catch (Throwable e) {
+            // errors from the native backend fail this batch but keep the worker alive
+            log.error("Batched inference failed for {} rows: {}", input.length, e.toString());
+            batch.forEach(p -> p.result.completeExceptionally(e));
+            return;
+        }
+        forwardNanos.add(System.nanoTime() - start);
+        queueWaitNanos.add(waited);
+        batches.increment();
+        rows.add(input.length);
+        largestBatch.accumulateAndGet(input.length, Math::max);
+        for (int i = 0; i < input.length; i++) {
+            batch.get(i).result.complete(output[i]);
+        }
+    }
+
+    private static class Pending {
+        private final double[] features;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        Pending(double[] features) {
+            this.features = features;
+        }
+    }
+
+    @Data
+    public static class BatchStats {
+        private long batches;
+        private long rows;
+        private int maxBatchSize;
+        private long maxWaitMicros;
+        private int largestBatch;
+        private double averageBatchSize;
+        // latency added by waiting for the batch to fill and for the previous pass
+        private double averageQueueWaitMicros;
+        private double averageForwardMicros;
+        // throughput of the forward passes alone
+        private double rowsPerForwardSecond;
+    }
+}
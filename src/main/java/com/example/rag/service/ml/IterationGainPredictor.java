@@ -0,0 +1,145 @@
+package com.example.rag.service.ml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.rag.config.MlConfig;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Expected quality score gain of one more LLM rewrite, and the decision to stop a session early.
+ * Consecutive stored iterations of a session give one sample each: the score, iteration number
+ * and last score change of an iteration, against the score change the rewrite after it brought.
+ * A least-squares fit over those samples, kept as sufficient statistics, predicts the gain of the
+ * next rewrite. A rewrite whose predicted gain is below {@code ml.budget.min-gain-per-second}
+ * times the rolling rewrite time is skipped, except on a sampled {@code ml.budget.probe-rate}
+ * that keeps the history covering later iterations.
+ */
+@Component
+public class IterationGainPredictor {
+
+    // sessions whose last iteration may still be followed by another; finished ones age out
+    private static final int MAX_OPEN_SESSIONS = 4096;
+    // score, iteration number and the last score change
+    private static final int REGRESSORS = 3;
+
+    private final MlConfig.Budget config;
+    private final TrainingSetStore trainingSetStore;
+
+    // guarded by this
+    private final LinkedHashMap<String, Step> lastSteps = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Step> eldest) {
+            return size() > MAX_OPEN_SESSIONS;
+        }
+    };
+    private final double[][] xtx = new double[REGRESSORS + 1][REGRESSORS + 1];
+    private final double[] xty = new double[REGRESSORS + 1];
+    private double[] coefficients;
+    private int samples;
+    private int absorbed;
+    private double rewriteSeconds;
+    private long rewrites;
+
+    public IterationGainPredictor(MlConfig config, TrainingSetStore trainingSetStore) {
+        this.config = config.getBudget();
+        this.trainingSetStore = trainingSetStore;
+    }
+
+    // the history loaded at startup is published without an event
+    @PostConstruct
+    public void load() {
+        absorb(trainingSetStore.snapshot());
+    }
+
+    /**
+     * @param previousGain the score change since the previous iteration, 0 on the first one
+     * @return the score gain expected from rewriting a prompt at this iteration, NaN until
+     *         {@code ml.budget.min-samples} consecutive iterations have been stored
+     */
+    public synchronized double expectedGain(double qualityScore, int iteration, double previousGain) {
+        if (coefficients == null) {
+            return Double.NaN;
+        }
+        return coefficients[0] + coefficients[1] * qualityScore + coefficients[2] * iteration
+                + coefficients[3] * previousGain;
+    }
+
+    /**
+     * @return whether a rewrite at this iteration is expected to be worth its time
+     */
+    public boolean isWorthRewriting(double qualityScore, int iteration, double previousGain) {
+        double gain = expectedGain(qualityScore, iteration, previousGain);
+        if (!config.isEnabled() || Double.isNaN(gain)
+                || gain >= config.getMinGainPerSecond() * rewriteSeconds()) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < config.getProbeRate();
+    }
+
+    public synchronized void recordRewrite(long nanos) {
+        double seconds = nanos / 1e9;
+        rewriteSeconds = rewrites == 0 ? seconds
+                : config.getDecay() * rewriteSeconds + (1.0 - config.getDecay()) * seconds;
+        rewrites++;
+    }
+
+    /**
+     * @return the rolling rewrite time, or the configured default before any was measured
+     */
+    public synchronized double rewriteSeconds() {
+        return rewrites > 0 ? rewriteSeconds : config.getDefaultRewriteSeconds();
+    }
+
+    public synchronized int samples() {
+        return samples;
+    }
+
+    @EventListener
+    public void onTrainingSetUpdated(TrainingSetUpdatedEvent event) {
+        absorb(event.getSnapshot());
+    }
+
+    synchronized void absorb(TrainingSnapshot history) {
+        // the store only appends, and a session's iterations are saved in order
+        int before = samples;
+        for (int i = absorbed; i < history.size(); i++) {
+            String sessionId = history.sessionId(i);
+            if (sessionId == null) {
+                continue;
+            }
+            int iteration = history.iterationNumber(i);
+            double score = history.qualityScore(i);
+            Step last = lastSteps.remove(sessionId);
+            double gain = 0.0;
+            if (last != null && iteration == last.iteration + 1) {
+                gain = score - last.score;
+                IncrementalLeastSquares.addSample(xtx, xty,
+                        new double[] { last.score, last.iteration, last.gain }, gain);
+                samples++;
+            }
+            lastSteps.put(sessionId, new Step(iteration, score, gain));
+        }
+        absorbed = Math.max(absorbed, history.size());
+        if (samples != before && samples >= config.getMinSamples()) {
+            coefficients = IncrementalLeastSquares.solve(xtx, xty);
+        }
+    }
+
+    private static class Step {
+        private final int iteration;
+        private final double score;
+        private final double gain;
+
+        Step(int iteration, double score, double gain) {
+            this.iteration = iteration;
+            this.score = score;
+            this.gain = gain;
+        }
+    }
+}
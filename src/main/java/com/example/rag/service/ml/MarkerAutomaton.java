@@ -0,0 +1,155 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho–Corasick automaton over a fixed set of ASCII marker strings.
+ * Feeding a text through {@link #next} one character at a time and reading {@link #matches} after
+ * each step reports every occurrence of every marker, overlapping ones included, so a text is
+ * matched against all lexicons at once instead of once per {@code contains} call.
+ */
+public final class MarkerAutomaton {
+
+    private static final int ASCII = 128;
+
+    private final String[] markers;
+    private final int[] charClass = new int[ASCII];
+    private final int alphabetSize;
+    // transitions[state * alphabetSize + class], a complete DFA
+    private final int[] transitions;
+    // marker ids ending at each state, failure-link outputs included
+    private final int[][] outputs;
+
+    private MarkerAutomaton(List<String> markers) {
+        this.markers = markers.toArray(new String[0]);
+
+        // class 0 stands for every character that appears in no marker
+        int classes = 1;
+        for (String marker : markers) {
+            for (int i = 0; i < marker.length(); i++) {
+                char c = marker.charAt(i);
+                if (c >= ASCII) {
+                    throw new IllegalArgumentException("Markers must be ASCII: " + marker);
+                }
+                if (charClass[c] == 0) {
+                    charClass[c] = classes++;
+                }
+            }
+        }
+        this.alphabetSize = classes;
+
+        // trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(newState());
+        ends.add(new ArrayList<>());
+        for (int id = 0; id < markers.size(); id++) {
+            String marker = markers.get(id);
+            int state = 0;
+            for (int i = 0; i < marker.length(); i++) {
+                int c = charClass[marker.charAt(i)];
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    ends.add(new ArrayList<>());
+                }
+                state = trie.get(state)[c];
+            }
+            ends.get(state).add(id);
+        }
+
+        // breadth-first failure links, folded into the transition table
+        int states = trie.size();
+        transitions = new int[states * alphabetSize];
+        outputs = new int[states][];
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < alphabetSize; c++) {
+            int next = trie.get(0)[c];
+            transitions[c] = next < 0 ? 0 : next;
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        outputs[0] = new int[0];
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> out = new ArrayList<>(ends.get(state));
+            for (int id : outputs[failure[state]]) {
+                out.add(id);
+            }
+            outputs[state] = out.stream().mapToInt(Integer::intValue).toArray();
+            for (int c = 0; c < alphabetSize; c++) {
+                int next = trie.get(state)[c];
+                int fallback = transitions[failure[state] * alphabetSize + c];
+                if (next < 0) {
+                    transitions[state * alphabetSize + c] = fallback;
+                } else {
+                    transitions[state * alphabetSize + c] = next;
+                    failure[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private int[] newState() {
+        int[] state = new int[alphabetSize];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    public int markerCount() {
+        return markers.length;
+    }
+
+    public String marker(int id) {
+        return markers[id];
+    }
+
+    /**
+     * @return the state after reading {@code c} in {@code state}; scans start in state 0
+     */
+    public int next(int state, char c) {
+        return transitions[state * alphabetSize + (c < ASCII ? charClass[c] : 0)];
+    }
+
+    /**
+     * @return the ids of the markers ending in {@code state}
+     */
+    public int[] matches(int state) {
+        return outputs[state];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Collects marker lexicons; a string shared by several lexicons gets a single id.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> ids = new LinkedHashMap<>();
+
+        /**
+         * @return the marker ids of {@code lexicon}, in the same order
+         */
+        public int[] add(String... lexicon) {
+            int[] lexiconIds = new int[lexicon.length];
+            for (int i = 0; i < lexicon.length; i++) {
+                lexiconIds[i] = ids.computeIfAbsent(lexicon[i], marker -> ids.size());
+            }
+            return lexiconIds;
+        }
+
+        public MarkerAutomaton build() {
+            return new MarkerAutomaton(new ArrayList<>(ids.keySet()));
+        }
+    }
+}
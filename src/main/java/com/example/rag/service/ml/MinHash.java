@@ -0,0 +1,65 @@
+package com.example.rag.service.ml;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MinHash signatures over the character shingles of a text. The share of equal positions in two
+ * signatures estimates the Jaccard similarity of the two shingle sets, so near-duplicate texts can
+ * be found without comparing them pairwise, and signatures split into bands for LSH bucketing.
+ */
+public final class MinHash {
+
+    private final int shingleSize;
+    private final long[] seeds;
+
+    public MinHash(int hashes, int shingleSize, long seed) {
+        this.shingleSize = shingleSize;
+        this.seeds = new Random(seed).longs(hashes).toArray();
+    }
+
+    public int size() {
+        return seeds.length;
+    }
+
+    public int[] signature(String text) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        // texts shorter than a shingle are a single shingle
+        int last = Math.max(0, text.length() - shingleSize);
+        for (int start = 0; start <= last; start++) {
+            int end = Math.min(text.length(), start + shingleSize);
+            long shingle = 0;
+            for (int i = start; i < end; i++) {
+                shingle = shingle * 31 + text.charAt(i);
+            }
+            for (int h = 0; h < seeds.length; h++) {
+                int value = (int) (mix(shingle ^ seeds[h]) >>> 33);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return the estimated Jaccard similarity of the texts behind two signatures
+     */
+    public static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.rag.service.ml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pure-Java {@link RegressionNetwork}: fully connected ReLU hidden layers and a sigmoid output,
+ * trained on MSE with Adam. All parameters, gradients and Adam moments are kept in flat
+ * {@code double[]}s, and every per-row activation and delta has a preallocated buffer. As a
+ * result, training and prediction allocate nothing beyond the returned predictions. Initialisation,
+ * loss scaling and the Adam step follow DL4J's, so both engines train the same way.
+ */
+final class MlpRegressionNetwork implements RegressionNetwork {
+
+    private static final int FORMAT = 1;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final int[] sizes;
+    private final double learningRate;
+    // layer l has weights [in][out] row-major at weightOffsets[l], then out biases at biasOffsets[l]
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+    private final double[] params;
+    private final double[] gradients;
+    private final double[] firstMoments;
+    private final double[] secondMoments;
+    private long step;
+
+    // guarded by this; activations[l + 1] is the output of layer l, deltas[l] its error
+    private final double[][] activations;
+    private final double[][] deltas;
+
+    private MlpRegressionNetwork(int[] sizes, double learningRate, double[] params, double[] firstMoments,
+            double[] secondMoments, long step) {
+        this.sizes = sizes;
+        this.learningRate = learningRate;
+        this.weightOffsets = new int[sizes.length - 1];
+        this.biasOffsets = new int[sizes.length - 1];
+        int offset = 0;
+        for (int l = 0; l < sizes.length - 1; l++) {
+            weightOffsets[l] = offset;
+            biasOffsets[l] = offset + sizes[l] * sizes[l + 1];
+            offset = biasOffsets[l] + sizes[l + 1];
+        }
+        if (params.length != offset || firstMoments.length != offset || secondMoments.length != offset) {
+            throw new IllegalArgumentException("Expected " + offset + " parameters, got " + params.length);
+        }
+        this.params = params;
+        this.gradients = new double[offset];
+        this.firstMoments = firstMoments;
+        this.secondMoments = secondMoments;
+        this.step = step;
+        this.activations = new double[sizes.length][];
+        this.deltas = new double[sizes.length - 1][];
+        for (int l = 1; l < sizes.length; l++) {
+            activations[l] = new double[sizes[l]];
+            deltas[l - 1] = new double[sizes[l]];
+        }
+    }
+
+    /**
+     * @param sizes input, hidden and output layer sizes; the output layer must have one unit
+     */
+    static MlpRegressionNetwork create(int[] sizes, double learningRate, long seed) {
+        if (sizes.length < 2 || sizes[sizes.length - 1] != 1) {
+            throw new IllegalArgumentException("Expected at least one layer ending in a single output");
+        }
+        int count = 0;
+        for (int l = 0; l < sizes.length - 1; l++) {
+            count += (sizes[l] + 1) * sizes[l + 1];
+        }
+        double[] params = new double[count];
+        // Xavier: N(0, 2 / (fanIn + fanOut)) weights, zero biases
+        Random random = new Random(seed);
+        int offset = 0;
+        for (int l = 0; l < sizes.length - 1; l++) {
+            double std = Math.sqrt(2.0 / (sizes[l] + sizes[l + 1]));
+            int weights = sizes[l] * sizes[l + 1];
+            for (int i = 0; i < weights; i++) {
+                params[offset + i] = random.nextGaussian() * std;
+            }
+            offset += weights + sizes[l + 1];
+        }
+        return new MlpRegressionNetwork(sizes.clone(), learningRate, params, new double[count], new double[count], 0);
+    }
+
+    static MlpRegressionNetwork read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != FORMAT) {
+            throw new IOException("Unsupported network format");
+        }
+        int[] sizes = new int[data.readInt()];
+        for (int l = 0; l < sizes.length; l++) {
+            sizes[l] = data.readInt();
+        }
+        double learningRate = data.readDouble();
+        long step = data.readLong();
+        double[] params = readArray(data);
+        double[] firstMoments = readArray(data);
+        double[] secondMoments = readArray(data);
+        return new MlpRegressionNetwork(sizes, learningRate, params, firstMoments, secondMoments, step);
+    }
+
+    @Override
+    public RegressionNetworkEngine engine() {
+        return RegressionNetworkEngine.JAVA;
+    }
+
+    @Override
+    public synchronized void fit(double[][] inputs, double[] targets, int epochs) {
+        if (inputs.length != targets.length) {
+            throw new IllegalArgumentException("Got " + inputs.length + " rows but " + targets.length + " targets");
+        }
+        if (inputs.length == 0) {
+            return;
+        }
+        // MSE over one output, averaged over the batch: dL/dy = 2 (y - target) / n
+        double scale = 2.0 / inputs.length;
+        int output = sizes.length - 2;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            Arrays.fill(gradients, 0.0);
+            for (int row = 0; row < inputs.length; row++) {
+                double y = forward(checkWidth(inputs[row]));
+                deltas[output][0] = scale * (y - targets[row]) * y * (1.0 - y);
+                backward(inputs[row]);
+            }
+            adamStep();
+        }
+    }
+
+    @Override
+    public synchronized double[] predictBatch(double[][] rows) {
+        double[] predictions = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            predictions[i] = forward(checkWidth(rows[i]));
+        }
+        return predictions;
+    }
+
+    @Override
+    public synchronized RegressionNetwork copy() {
+        return new MlpRegressionNetwork(sizes, learningRate, params.clone(), firstMoments.clone(),
+                secondMoments.clone(), step);
+    }
+
+    @Override
+    public synchronized void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(FORMAT);
+        data.writeInt(sizes.length);
+        for (int size : sizes) {
+            data.writeInt(size);
+        }
+        data.writeDouble(learningRate);
+        data.writeLong(step);
+        writeArray(data, params);
+        writeArray(data, firstMoments);
+        writeArray(data, secondMoments);
+        data.flush();
+    }
+
+    // the parameters in the layout above
+    synchronized double[] getParams() {
+        return params.clone();
+    }
+
+    // must hold the monitor; fills activations and returns the output
+    private double forward(double[] input) {
+        activations[0] = input;
+        int layers = sizes.length - 1;
+        for (int l = 0; l < layers; l++) {
+            double[] in = activations[l];
+            double[] out = activations[l + 1];
+            int width = sizes[l + 1];
+            System.arraycopy(params, biasOffsets[l], out, 0, width);
+            int w = weightOffsets[l];
+            for (int i = 0; i < in.length; i++, w += width) {
+                double x = in[i];
+                if (x == 0.0) {
+                    continue;
+                }
+                for (int j = 0; j < width; j++) {
+                    out[j] += x * params[w + j];
+                }
+            }
+            if (l < layers - 1) {
+                for (int j = 0; j < width; j++) {
+                    out[j] = Math.max(0.0, out[j]);
+                }
+            } else {
+                for (int j = 0; j < width; j++) {
+                    out[j] = 1.0 / (1.0 + Math.exp(-out[j]));
+                }
+            }
+        }
+        return activations[layers][0];
+    }
+
+    // must hold the monitor; the output delta is set, accumulates this row's gradients
+    private void backward(double[] input) {
+        activations[0] = input;
+        for (int l = sizes.length - 2; l >= 0; l--) {
+            double[] in = activations[l];
+            double[] delta = deltas[l];
+            int width = sizes[l + 1];
+            int b = biasOffsets[l];
+            for (int j = 0; j < width; j++) {
+                gradients[b + j] += delta[j];
+            }
+            double[] previous = l > 0 ? deltas[l - 1] : null;
+            int w = weightOffsets[l];
+            for (int i = 0; i < in.length; i++, w += width) {
+                double x = in[i];
+                double error = 0.0;
+                for (int j = 0; j < width; j++) {
+                    gradients[w + j] += x * delta[j];
+                    error += params[w + j] * delta[j];
+                }
+                if (previous != null) {
+                    // ReLU derivative
+                    previous[i] = x > 0.0 ? error : 0.0;
+                }
+            }
+        }
+    }
+
+    private void adamStep() {
+        step++;
+        double alpha = learningRate * Math.sqrt(1.0 - Math.pow(BETA2, step)) / (1.0 - Math.pow(BETA1, step));
+        for (int p = 0; p < params.length; p++) {
+            double g = gradients[p];
+            firstMoments[p] = BETA1 * firstMoments[p] + (1.0 - BETA1) * g;
+            secondMoments[p] = BETA2 * secondMoments[p] + (1.0 - BETA2) * g * g;
+            params[p] -= alpha * firstMoments[p] / (Math.sqrt(secondMoments[p]) + EPSILON);
+        }
+    }
+
+    private double[] checkWidth(double[] row) {
+        if (row.length != sizes[0]) {
+            throw new IllegalArgumentException("Expected " + sizes[0] + " features, got " + row.length);
+        }
+        return row;
+    }
+
+    private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readArray(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+}
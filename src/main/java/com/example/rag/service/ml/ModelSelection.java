@@ -0,0 +1,25 @@
+package com.example.rag.service.ml;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one cross-validation run of {@link ModelSelectionService}: the method AUTO requests
+ * use for the history version it was chosen on, and the evidence it was chosen by.
+ */
+@Getter
+@AllArgsConstructor
+public class ModelSelection {
+    // LINEAR, POLYNOMIAL, NEURAL or ENSEMBLE
+    private final String method;
+    // member weights AUTO uses when the method is ENSEMBLE, learned from the out-of-fold predictions
+    private final Map<String, Double> ensembleWeights;
+    // out-of-fold MSE per method, plus FIXED_ENSEMBLE for the default 0.3/0.3/0.4 weights
+    private final Map<String, Double> crossValidatedMse;
+    private final long trainingVersion;
+    private final int rows;
+    private final int folds;
+    private final long elapsedMs;
+}
@@ -0,0 +1,346 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.rag.config.MlConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chooses the regression method behind AUTO. Every model is k-fold cross-validated over the
+ * history on a ForkJoin pool, one task per model and fold, and ensemble member weights are
+ * learned from the out-of-fold predictions. ENSEMBLE is scored with weights learned without the
+ * fold being scored, so its CV error is as out-of-sample as the single models'. The cheapest
+ * method whose CV error is within {@code ml.auto.tolerance} of the best is published per history
+ * version, so AUTO requests only pay for more than one model when that is measurably more accurate.
+ * NEURAL's CV error is pessimistic: each fold trains a fresh network for one round of
+ * {@code ml.neural.epochs}, while the served network keeps training across rounds.
+ * Nothing runs until the first AUTO request; after that every history update triggers a run,
+ * coalesced so at most one is in flight.
+ */
+@Service
+@Slf4j
+public class ModelSelectionService {
+
+    private static final String[] COST_ORDER = { "LINEAR", "POLYNOMIAL", "NEURAL" };
+    // ensemble weights are searched on a grid of this step over the simplex
+    private static final int WEIGHT_STEPS = 20;
+    private static final long FOLD_SEED = 42;
+
+    private final IncrementalLeastSquares linearModel = new IncrementalLeastSquares(UnaryOperator.identity());
+    private final IncrementalLeastSquares polynomialModel = new IncrementalLeastSquares(
+            RegressionModelsService::addPolynomialFeatures);
+
+    private final TrainingSetStore trainingSetStore;
+    private final MlConfig config;
+    private final ForkJoinPool pool;
+    private final AtomicReference<ModelSelection> current = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile boolean active;
+
+    public ModelSelectionService(TrainingSetStore trainingSetStore, MlConfig config,
+            @Qualifier("modelSelectionPool") ForkJoinPool pool) {
+        this.trainingSetStore = trainingSetStore;
+        this.config = config;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the latest selection, asking for a new one when {@code history} is newer than it;
+     *         null until a first run has finished
+     */
+    public ModelSelection select(TrainingSnapshot history) {
+        active = true;
+        ModelSelection selection = current.get();
+        if (selection == null || selection.getTrainingVersion() < history.getVersion()) {
+            requestSelection();
+        }
+        return selection;
+    }
+
+    public ModelSelection getCurrent() {
+        return current.get();
+    }
+
+    @EventListener
+    public void onTrainingSetUpdated(TrainingSetUpdatedEvent event) {
+        if (active) {
+            requestSelection();
+        }
+    }
+
+    private void requestSelection() {
+        dirty.set(true);
+        if (running.compareAndSet(false, true)) {
+            pool.execute(this::run);
+        }
+    }
+
+    // each pass picks up the latest history, so a burst of updates costs at most one extra run
+    private void run() {
+        try {
+            while (dirty.getAndSet(false)) {
+                selectFor(trainingSetStore.snapshot());
+            }
+        } catch (Exception e) {
+            log.error("Model selection error: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+        // an update that arrived after the last pass but before running was cleared
+        if (dirty.get() && running.compareAndSet(false, true)) {
+            pool.execute(this::run);
+        }
+    }
+
+    private void selectFor(TrainingSnapshot history) {
+        int folds = config.getAuto().getFolds();
+        int n = history.size();
+        ModelSelection previous = current.get();
+        if (n < Math.max(config.getAuto().getMinRows(), folds * 2)
+                || (previous != null && previous.getTrainingVersion() >= history.getVersion())) {
+            return;
+        }
+        long start = System.nanoTime();
+        int[] foldOf = assignFolds(n, folds);
+        double[] targets = new double[n];
+        for (int i = 0; i < n; i++) {
+            targets[i] = history.qualityScore(i);
+        }
+
+        List<String> methods = new ArrayList<>(List.of(COST_ORDER));
+        if (!config.getAuto().isIncludeNeural()) {
+            methods.remove("NEURAL");
+        }
+        double[][] outOfFold = new double[methods.size()][n];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int m = 0; m < methods.size(); m++) {
+            String method = methods.get(m);
+            double[] predictions = outOfFold[m];
+            for (int fold = 0; fold < folds; fold++) {
+                int heldOut = fold;
+                // each task writes only the rows of its own fold
+                tasks.add(ForkJoinTask.adapt(() -> crossValidate(method, history, foldOf, heldOut, predictions)));
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        Map<String, Double> mse = new LinkedHashMap<>();
+        for (int m = 0; m < methods.size(); m++) {
+            mse.put(methods.get(m), mse(outOfFold[m], targets));
+        }
+        double[] learned = learnWeights(outOfFold, targets);
+        mse.put("ENSEMBLE", mse(crossFittedBlend(outOfFold, targets, foldOf, folds), targets));
+        double[] fixed = new double[methods.size()];
+        for (int m = 0; m < methods.size(); m++) {
+            fixed[m] = RegressionModelsService.DEFAULT_ENSEMBLE_WEIGHTS.get(methods.get(m));
+        }
+        double[] fixedBlend = blend(outOfFold, fixed);
+
+        // candidates are in cost order, so the first one close enough to the best wins
+        double best = mse.values().stream().mapToDouble(Double::doubleValue).min().orElse(0.0);
+        String chosen = "ENSEMBLE";
+        for (Map.Entry<String, Double> candidate : mse.entrySet()) {
+            if (candidate.getValue() <= best * (1.0 + config.getAuto().getTolerance())) {
+                chosen = candidate.getKey();
+                break;
+            }
+        }
+        mse.put("FIXED_ENSEMBLE", mse(fixedBlend, targets));
+
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (int m = 0; m < methods.size(); m++) {
+            weights.put(methods.get(m), learned[m]);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        current.set(new ModelSelection(chosen, weights, mse, history.getVersion(), n, folds, elapsedMs));
+        log.info("AUTO selected {} over {} rows ({}-fold CV mse {}, ensemble weights {}) in {} ms", chosen, n,
+                folds, mse, weights, elapsedMs);
+    }
+
+    private void crossValidate(String method, TrainingSnapshot history, int[] foldOf, int fold,
+            double[] predictions) {
+        int n = foldOf.length;
+        int testCount = 0;
+        for (int f : foldOf) {
+            if (f == fold) {
+                testCount++;
+            }
+        }
+        int[] train = new int[n - testCount];
+        int[] test = new int[testCount];
+        for (int i = 0, a = 0, b = 0; i < n; i++) {
+            if (foldOf[i] == fold) {
+                test[b++] = i;
+            } else {
+                train[a++] = i;
+            }
+        }
+
+        if ("NEURAL".equals(method)) {
+            double[][] inputs = new double[train.length][];
+            double[] targets = new double[train.length];
+            for (int i = 0; i < train.length; i++) {
+                inputs[i] = history.row(train[i], new double[history.featureCount()]);
+                targets[i] = history.qualityScore(train[i]);
+            }
+            // a fresh network per fold, trained for one background round's worth of epochs; the
+            // served network warm-starts every round, so this error overstates its error
+            RegressionNetwork network = config.getNeural().getEngine().create();
+            network.fit(inputs, targets, config.getNeural().getEpochs());
+            double[][] rows = new double[test.length][];
+            for (int i = 0; i < test.length; i++) {
+                rows[i] = history.row(test[i], new double[history.featureCount()]);
+            }
+            double[] output = network.predictBatch(rows);
+            for (int i = 0; i < test.length; i++) {
+                predictions[test[i]] = clip(output[i]);
+            }
+            return;
+        }
+
+        IncrementalLeastSquares model = "LINEAR".equals(method) ? linearModel : polynomialModel;
+        double[] coefficients = model.fitRows(history, train);
+        double[] row = new double[history.featureCount()];
+        for (int i : test) {
+            predictions[i] = clip(model.predictWith(coefficients, history.row(i, row)));
+        }
+    }
+
+    // same fallback and range as the request path
+    private static double clip(double prediction) {
+        return Double.isNaN(prediction) ? 0.5 : Math.max(0.0, Math.min(1.0, prediction));
+    }
+
+    private static int[] assignFolds(int n, int folds) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(FOLD_SEED);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[] foldOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            foldOf[order[i]] = i % folds;
+        }
+        return foldOf;
+    }
+
+    /**
+     * Non-negative member weights summing to one that minimise the MSE of the blended
+     * out-of-fold predictions, searched on a grid over the simplex.
+     */
+    static double[] learnWeights(double[][] outOfFold, double[] targets) {
+        int[] units = new int[outOfFold.length];
+        int[] best = new int[outOfFold.length];
+        double[] bestMse = { Double.POSITIVE_INFINITY };
+        searchWeights(outOfFold, targets, units, 0, WEIGHT_STEPS, best, bestMse);
+        double[] weights = new double[best.length];
+        for (int m = 0; m < best.length; m++) {
+            weights[m] = (double) best[m] / WEIGHT_STEPS;
+        }
+        return weights;
+    }
+
+    /**
+     * Blends each fold's out-of-fold predictions with weights learned on the other folds only.
+     */
+    static double[] crossFittedBlend(double[][] outOfFold, double[] targets, int[] foldOf, int folds) {
+        double[] blended = new double[targets.length];
+        for (int fold = 0; fold < folds; fold++) {
+            int trainCount = 0;
+            for (int f : foldOf) {
+                if (f != fold) {
+                    trainCount++;
+                }
+            }
+            double[][] trainPredictions = new double[outOfFold.length][trainCount];
+            double[] trainTargets = new double[trainCount];
+            for (int i = 0, a = 0; i < targets.length; i++) {
+                if (foldOf[i] != fold) {
+                    for (int m = 0; m < outOfFold.length; m++) {
+                        trainPredictions[m][a] = outOfFold[m][i];
+                    }
+                    trainTargets[a++] = targets[i];
+                }
+            }
+            double[] weights = learnWeights(trainPredictions, trainTargets);
+            double total = 0.0;
+            for (double weight : weights) {
+                total += weight;
+            }
+            for (int i = 0; i < targets.length; i++) {
+                if (foldOf[i] == fold) {
+                    for (int m = 0; m < outOfFold.length; m++) {
+                        blended[i] += outOfFold[m][i] * weights[m] / total;
+                    }
+                }
+            }
+        }
+        return blended;
+    }
+
+    private static void searchWeights(double[][] outOfFold, double[] targets, int[] units, int member,
+            int remaining, int[] best, double[] bestMse) {
+        if (member == units.length - 1) {
+            units[member] = remaining;
+            double[] weights = new double[units.length];
+            for (int m = 0; m < units.length; m++) {
+                weights[m] = (double) units[m] / WEIGHT_STEPS;
+            }
+            double mse = mse(blend(outOfFold, weights), targets);
+            if (mse < bestMse[0]) {
+                bestMse[0] = mse;
+                System.arraycopy(units, 0, best, 0, units.length);
+            }
+            return;
+        }
+        for (int share = 0; share <= remaining; share++) {
+            units[member] = share;
+            searchWeights(outOfFold, targets, units, member + 1, remaining - share, best, bestMse);
+        }
+    }
+
+    private static double[] blend(double[][] predictions, double[] weights) {
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double[] blended = new double[predictions[0].length];
+        for (int m = 0; m < predictions.length; m++) {
+            for (int i = 0; i < blended.length; i++) {
+                blended[i] += predictions[m][i] * weights[m] / total;
+            }
+        }
+        return blended;
+    }
+
+    private static double mse(double[] predictions, double[] targets) {
+        double sum = 0.0;
+        for (int i = 0; i < targets.length; i++) {
+            double error = targets[i] - predictions[i];
+            sum += error * error;
+        }
+        return sum / targets.length;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.rag.service.ml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.service.ml.IncrementalLeastSquares.State;
+import com.example.rag.service.ml.NeuralNetworkTrainer.NetworkSnapshot;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Trained model artefacts on local disk ({@code ml.model-dir}), so a restart continues from the
+ * last models instead of training from scratch. Each artefact, including what it was trained on,
+ * is a single file written to a temporary name and moved into place, so a crash mid-save leaves
+ * the previous artefact intact. Nothing is stored when the directory is blank.
+ */
+@Component
+@Slf4j
+public class ModelStore {
+
+    // "DNN" and a format number, never the first bytes of a bare network file
+    private static final int NETWORK_FORMAT = 0x444E4E02;
+    private static final int LEAST_SQUARES_FORMAT = 2;
+
+    private final Path directory;
+
+    public ModelStore(MlConfig config) {
+        String dir = config.getModelDir();
+        this.directory = dir == null || dir.isBlank() ? null : Paths.get(dir);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public void saveNetwork(NetworkSnapshot snapshot) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            // the training identity and the network share one file, so one move publishes both
+            RegressionNetworkEngine engine = snapshot.getNetwork().engine();
+            Path tmp = directory.resolve(engine.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(NETWORK_FORMAT);
+                out.writeLong(snapshot.getVersion());
+                out.writeLong(snapshot.getTrainingVersion());
+                out.writeInt(snapshot.getTrainingSize());
+                out.writeLong(snapshot.getTrainingMaxId());
+                out.writeLong(snapshot.getTrainingChecksum());
+                // the optimiser state is kept so training resumes where it left off
+                snapshot.getNetwork().write(out);
+            }
+            move(tmp, directory.resolve(engine.getFileName()));
+            log.info("Saved DNN v{} (training version {})", snapshot.getVersion(), snapshot.getTrainingVersion());
+        } catch (IOException e) {
+            log.error("Failed to save DNN snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the last network saved with {@code engine}
+     */
+    public Optional<NetworkSnapshot> loadNetwork(RegressionNetworkEngine engine) {
+        Path file = isEnabled() ? directory.resolve(engine.getFileName()) : null;
+        if (file == null || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            // files from before the identity was stored with the network are retrained
+            if (in.readInt() != NETWORK_FORMAT) {
+                log.info("Saved DNN has no training identity, training a new {} network", engine);
+                return Optional.empty();
+            }
+            long version = in.readLong();
+            long trainingVersion = in.readLong();
+            int trainingSize = in.readInt();
+            long trainingMaxId = in.readLong();
+            long trainingChecksum = in.readLong();
+            RegressionNetwork network = engine.read(in);
+            return Optional.of(new NetworkSnapshot(network, version, trainingVersion, trainingSize, trainingMaxId,
+                    trainingChecksum));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable DNN snapshot: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void saveLeastSquares(String name, State state) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path tmp = directory.resolve(name + ".bin.tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(LEAST_SQUARES_FORMAT);
+                out.writeLong(state.getTrainingVersion());
+                out.writeInt(state.getAbsorbed());
+                out.writeLong(state.getMaxId());
+                out.writeLong(state.getChecksum());
+                writeArray(out, state.getXty());
+                for (double[] row : state.getXtx()) {
+                    writeArray(out, row);
+                }
+                out.writeBoolean(state.getCoefficients() != null);
+                if (state.getCoefficients() != null) {
+                    writeArray(out, state.getCoefficients());
+                }
+            }
+            move(tmp, directory.resolve(name + ".bin"));
+            log.debug("Saved {} least-squares state over {} rows", name, state.getAbsorbed());
+        } catch (IOException e) {
+            log.error("Failed to save {} least-squares state: {}", name, e.getMessage());
+        }
+    }
+
+    public Optional<State> loadLeastSquares(String name) {
+        Path file = isEnabled() ? directory.resolve(name + ".bin") : null;
+        if (file == null || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != LEAST_SQUARES_FORMAT) {
+                return Optional.empty();
+            }
+            long trainingVersion = in.readLong();
+            int absorbed = in.readInt();
+            long maxId = in.readLong();
+            long checksum = in.readLong();
+            double[] xty = readArray(in);
+            double[][] xtx = new double[xty.length][];
+            for (int i = 0; i < xtx.length; i++) {
+                xtx[i] = readArray(in);
+            }
+            double[] coefficients = in.readBoolean() ? readArray(in) : null;
+            return Optional.of(new State(trainingVersion, absorbed, maxId, checksum, xtx, xty, coefficients));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable {} least-squares state: {}", name, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readArray(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+}
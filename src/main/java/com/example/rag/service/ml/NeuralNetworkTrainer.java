@@ -0,0 +1,179 @@
+package com.example.rag.service.ml;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.example.rag.config.MlConfig;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Trains the DNN off the request path.
+ * New history rows schedule a training round after a quiet period; each round continues from a copy
+ * of the current network and publishes the result as a new snapshot, so request threads only ever
+ * run inference on a network that is no longer being trained.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NeuralNetworkTrainer {
+
+    private final TrainingSetStore trainingSetStore;
+    private final MlConfig config;
+    private final ModelStore modelStore;
+    private final ScheduledExecutorService trainer = Executors.newSingleThreadScheduledExecutor(
+            daemon(new CustomizableThreadFactory("dnn-trainer-")));
+    private final AtomicReference<NetworkSnapshot> current = new AtomicReference<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // guarded by this; when the first row the pending round waits for arrived
+    private ScheduledFuture<?> pending;
+    private long pendingSince;
+
+    @PostConstruct
+    public void start() {
+        if (!config.getNeural().isLazyStart()) {
+            ensureStarted();
+        }
+    }
+
+    /**
+     * Restores or trains the first network in the background unless that has already begun.
+     * With {@code ml.neural.lazy-start} nothing touches ND4J until this is first called.
+     */
+    public void ensureStarted() {
+        if (started.compareAndSet(false, true)) {
+            trainer.execute(this::warmStart);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        trainer.shutdownNow();
+    }
+
+    @EventListener
+    public void onTrainingSetUpdated(TrainingSetUpdatedEvent event) {
+        // before the first start, the warm start picks up the new rows anyway
+        if (started.get()) {
+            scheduleTraining();
+        }
+    }
+
+    /**
+     * Predicts a batch of rows with the latest published network in a single forward pass.
+     *
+     * @return one prediction per row, all NaN until a first network has been trained
+     */
+    public double[] predictBatch(double[][] rows) {
+        NetworkSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            double[] predictions = new double[rows.length];
+            Arrays.fill(predictions, Double.NaN);
+            return predictions;
+        }
+        return snapshot.getNetwork().predictBatch(rows);
+    }
+
+    public NetworkSnapshot getCurrent() {
+        return current.get();
+    }
+
+    // on the trainer thread, so startup doesn't wait for the network to load
+    private void warmStart() {
+        TrainingSnapshot history = trainingSetStore.snapshot();
+        modelStore.loadNetwork(config.getNeural().getEngine()).ifPresent(saved -> {
+            // rows reload in id order, so the saved network's rows may not be the first ones any more
+            if (saved.getTrainingSize() > history.size()
+                    || saved.getTrainingMaxId() != history.maxId(saved.getTrainingSize())
+                    || saved.getTrainingChecksum() != history.checksum(saved.getTrainingSize())) {
+                log.info("Saved DNN was trained on rows that are no longer in the history, training a new one");
+            } else if (current.compareAndSet(null, saved)) {
+                log.info("Restored DNN v{} trained on {} rows", saved.getVersion(), saved.getTrainingSize());
+            }
+        });
+        // the history loaded at startup doesn't raise an event; a restored network that is
+        // already up to date makes this round a no-op
+        scheduleTraining();
+    }
+
+    // debounce: a burst of new rows results in one training round, but a steady stream of rows
+    // still trains at least every max-debounce-millis
+    private synchronized void scheduleTraining() {
+        long now = System.nanoTime();
+        if (pending == null || !pending.cancel(false)) {
+            pendingSince = now;
+        }
+        long deadline = pendingSince + TimeUnit.MILLISECONDS.toNanos(config.getNeural().getMaxDebounceMillis());
+        long delay = Math.min(TimeUnit.MILLISECONDS.toNanos(config.getNeural().getDebounceMillis()), deadline - now);
+        pending = trainer.schedule(this::train, Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void train() {
+        TrainingSnapshot history = trainingSetStore.snapshot();
+        NetworkSnapshot previous = current.get();
+        if (history.size() < 2 || (previous != null && previous.getTrainingVersion() == history.getVersion())) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            RegressionNetworkEngine engine = config.getNeural().getEngine();
+            RegressionNetwork network = previous != null ? previous.getNetwork().copy() : engine.create();
+
+            int numSamples = history.size();
+            double[][] inputs = new double[numSamples][];
+            double[] targets = new double[numSamples];
+            for (int i = 0; i < numSamples; i++) {
+                inputs[i] = history.row(i, new double[history.featureCount()]);
+                targets[i] = history.qualityScore(i);
+            }
+            // train until we hit the final epoch
+            network.fit(inputs, targets, config.getNeural().getEpochs());
+
+            long version = previous != null ? previous.getVersion() + 1 : 1;
+            NetworkSnapshot published = new NetworkSnapshot(network, version, history.getVersion(), history.size(),
+                    history.maxId(history.size()), history.checksum(history.size()));
+            current.set(published);
+            log.info("Published {} DNN v{} trained on {} rows in {} ms", network.engine(), version, history.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            modelStore.saveNetwork(published);
+        } catch (Exception e) {
+            log.error("DNN training error: {}", e.getMessage());
+        }
+    }
+
+    private static CustomizableThreadFactory daemon(CustomizableThreadFactory factory) {
+        factory.setDaemon(true);
+        return factory;
+    }
+
+    /**
+     * A trained network that is never fitted again once published.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class NetworkSnapshot {
+        private final RegressionNetwork network;
+        private final long version;
+        // version of the training set the network was fitted on
+        private final long trainingVersion;
+        private final int trainingSize;
+        // identity of the rows it was fitted on, see TrainingSnapshot#rowHash
+        private final long trainingMaxId;
+        private final long trainingChecksum;
+    }
+}
@@ -1,29 +1,39 @@
 package com.example.rag.service.ml;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.rag.config.MlConfig;
+import com.example.rag.config.OllamaConfig;
 import com.example.rag.dto.nestedDtos.IterationDetail;
 import com.example.rag.dto.requestDtos.RefinementRequest;
+import com.example.rag.dto.responseDtos.MetricsSummary;
 import com.example.rag.dto.responseDtos.RefinementResponse;
 import com.example.rag.dto.responseDtos.RegressionResult;
-import com.example.rag.model.ml.FeatureWeight;
 import com.example.rag.model.ml.PromptRefinement;
 import com.example.rag.model.ml.RegressionMetrics;
-import com.example.rag.repository.ml.FeatureWeightRepository;
 import com.example.rag.repository.ml.PromptRefinementRepository;
 import com.example.rag.repository.ml.RegressionMetricsRepository;
+import com.example.rag.service.rag.OllamaConversation;
+import com.example.rag.service.rag.OllamaPriority;
 import com.example.rag.service.rag.OllamaService;
 
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -43,72 +53,167 @@ public class PromptRefinementService {
     private RegressionMetricsRepository metricsRepository;
 
     @Autowired
-    private FeatureWeightRepository featureWeightRepository;
+    private FeatureWeightStore featureWeightStore;
 
     @Autowired
     private OllamaService ollamaService;
 
+    @Autowired
+    private TrainingSetStore trainingSetStore;
+
+    @Autowired
+    private MlConfig mlConfig;
+
+    @Autowired
+    @Qualifier("beamExecutor")
+    private ExecutorService beamExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RefinementCache refinementCache;
+
+    @Autowired
+    private RegressionMetricsTracker regressionMetricsTracker;
+
+    @Autowired
+    private OllamaConfig ollamaConfig;
+
+    @Autowired
+    private IterationGainPredictor iterationGainPredictor;
+
     private static final double LEARNING_RATE = 0.01;
 
-    @Transactional
+    // identical on every call, so Ollama serves it from its prompt cache
+    private static final String REFINEMENT_SYSTEM_PROMPT = "You are a prompt engineering expert. "
+            + "Each message gives you a prompt, its current quality score and feedback on it. "
+            + "Reply with an improved version of the prompt that addresses the feedback. "
+            + "Return ONLY the improved prompt, no explanations or preamble.";
+
     public RefinementResponse refinePrompt(RefinementRequest request) throws Exception {
-        String sessionId = UUID.randomUUID().toString();
+        return refinePrompt(UUID.randomUUID().toString(), request, RefinementProgress.NONE);
+    }
+
+    /**
+     * Runs a refinement session. Each iteration is committed in its own short transaction before
+     * the next LLM call, so no connection is held while Ollama works, and is then reported to
+     * {@code progress}.
+     *
+     * @throws CancellationException if {@code progress} reports the session cancelled; iterations
+     *                               already committed are kept
+     */
+    public RefinementResponse refinePrompt(String sessionId, RefinementRequest request,
+            RefinementProgress progress) throws Exception {
         log.info("Starting refinement session: {}", sessionId);
 
+        // a converged session for the same or a near-duplicate prompt answers without any LLM call
+        if (!Boolean.TRUE.equals(request.getSkipCache())) {
+            Optional<RefinementResponse> cached = refinementCache.lookup(request);
+            if (cached.isPresent()) {
+                cached.get().getIterations().forEach(progress::onIteration);
+                return cached.get().toBuilder().sessionId(sessionId).build();
+            }
+        }
+
         // get prompt and iteration details
         String currentPrompt = request.getPrompt();
         List<IterationDetail> iterations = new ArrayList<>();
 
         // get feature weights and historical data
-        Map<String, Double> featureWeights = initializeFeatureWeights(request.getFeatureWeights());
-        List<PromptRefinement> historicalData = refinementRepository.findAll();
+        FeatureVector featureWeights = resolveFeatureWeights(request.getFeatureWeights());
+        TrainingSnapshot historicalData = trainingSetStore.snapshot();
 
         // init scoring params
         double previousScore = 0.0;
         boolean converged = false;
         int iteration = 0;
+        int skippedIterations = 0;
+
+        // the session's rewrites form one chat, so each call only prefills its new turn
+        OllamaConversation conversation = newConversation(sessionId);
+
+        // beam mode scores several rewrites per iteration and keeps the best few
+        int beamCandidates = request.getBeamCandidates() != null ? request.getBeamCandidates()
+                : mlConfig.getBeam().getCandidates();
+        int beamWidth = Math.max(1, request.getBeamWidth() != null ? request.getBeamWidth()
+                : mlConfig.getBeam().getWidth());
+        boolean beamMode = beamCandidates > 1;
+        List<String> beam = List.of(currentPrompt);
+        int seed = ThreadLocalRandom.current().nextInt();
 
         for (iteration = 0; iteration < request.getMaxIterations(); iteration++) {
+            if (progress.isCancelled()) {
+                throw new CancellationException("Refinement session " + sessionId + " cancelled");
+            }
             log.info("Iteration {}: {}", iteration + 1, request.getMaxIterations());
 
             // extract features from the given prompt
-            Map<String, Double> features = featureExtractionService.extractFeatures(currentPrompt);
+            FeatureVector features = featureExtractionService.extractFeatures(currentPrompt);
 
             // compute the relevant scores
             double qualityScore = featureExtractionService.calculateQualityScore(features, featureWeights);
             double predictedScore = predictScore(request.getRegressionMethod(), features, historicalData);
             String feedback = generateFeedback(features, featureWeights, request.getOptimizationGoals());
 
-            // initi prompt refinement
-            PromptRefinement refinement = saveRefinement(sessionId, currentPrompt, iteration, qualityScore,
-                    predictedScore, features, feedback, request);
+            // if quality is exceeds threshold then confirm convergence towards optimal
+            // score
+            boolean iterationConverged = qualityScore >= request.getConvergenceThreshold()
+                    || (iteration > 0 && Math.abs(qualityScore - previousScore) < 0.01);
+
+            // persist the iteration in its own short transaction
+            String iterationPrompt = currentPrompt;
+            int iterationNumber = iteration;
+            transactionTemplate.executeWithoutResult(status -> saveRefinement(sessionId, iterationPrompt,
+                    iterationNumber, qualityScore, predictedScore, features, feedback, request, iterationConverged));
+            if (!iterationConverged) {
+                updateFeatureWeights(featureWeights, qualityScore, predictedScore, features);
+            }
 
             // add the current iteration detail into the array list using builder pattern
-            iterations.add(IterationDetail.builder()
+            IterationDetail detail = IterationDetail.builder()
                     .iteration(iteration + 1)
                     .prompt(currentPrompt)
                     .qualityScore(qualityScore)
                     .predictedScore(predictedScore)
                     .feedback(feedback)
-                    .build());
+                    .build();
+            iterations.add(detail);
+            progress.onIteration(detail);
 
-            // if quality is exceeds threshold then confirm convergence towards optimal
-            // score
-            if (qualityScore >= request.getConvergenceThreshold()
-                    || (iteration > 0 && Math.abs(qualityScore - previousScore) < 0.01)) {
+            if (iterationConverged) {
                 converged = true;
-                refinement.setConverged(true);
-                refinementRepository.save(refinement);
                 log.info("Converged at iteration {}", iteration + 1);
                 break;
             }
 
-            // update the weights
-            updateFeatureWeights(featureWeights, qualityScore, predictedScore, features);
+            // stop once another rewrite isn't expected to be worth its time; the last iteration's
+            // rewrite is never scored, so it always runs
+            double previousGain = iteration > 0 ? qualityScore - previousScore : 0.0;
+            if (iteration + 1 < request.getMaxIterations()
+                    && !iterationGainPredictor.isWorthRewriting(qualityScore, iteration, previousGain)) {
+                skippedIterations = request.getMaxIterations() - (iteration + 1);
+                double expectedGain = iterationGainPredictor.expectedGain(qualityScore, iteration, previousGain);
+                log.info("Stopping at iteration {}: expected gain {} over a {}s rewrite, skipping {} iterations",
+                        iteration + 1, String.format("%.4f", expectedGain),
+                        String.format("%.1f", iterationGainPredictor.rewriteSeconds()), skippedIterations);
+                break;
+            }
 
             // if not converged then keep updating the prompt
             if (iteration < request.getMaxIterations()) {
-                currentPrompt = refinePromptWithOllama(currentPrompt, feedback, qualityScore);
+                long rewriteStarted = System.nanoTime();
+                if (beamMode) {
+                    BeamRound round = expandBeam(beam, featureWeights, request, historicalData, beamCandidates,
+                            beamWidth, seed + iteration * beamCandidates);
+                    beam = round.prompts;
+                    currentPrompt = beam.get(0);
+                    iterations.get(iterations.size() - 1).setCandidatesEvaluated(round.evaluated);
+                } else {
+                    currentPrompt = refinePromptWithOllama(conversation, currentPrompt, feedback, qualityScore,
+                            null);
+                }
+                iterationGainPredictor.recordRewrite(System.nanoTime() - rewriteStarted);
             }
 
             previousScore = qualityScore;
@@ -123,7 +228,7 @@ public class PromptRefinementService {
         double finalScore = iterations.get(iterations.size() - 1).getQualityScore();
         double improvement = ((finalScore - initialScore) / initialScore) * 100;
 
-        return RefinementResponse.builder()
+        RefinementResponse response = RefinementResponse.builder()
                 .sessionId(sessionId)
                 .originalPrompt(request.getPrompt())
                 .refinedPrompt(currentPrompt)
@@ -136,11 +241,21 @@ public class PromptRefinementService {
                 .RegressionResult(regressionResult)
                 .finalFeatures(iterations.get(iterations.size() - 1).getFeatures())
                 .regressionMethod(request.getRegressionMethod())
+                .skippedIterations(skippedIterations)
                 .build();
+        refinementCache.put(request, response);
+        return response;
+    }
+
+    /**
+     * @return the metrics of each regression method's predictions so far, then of all of them
+     */
+    public List<MetricsSummary> getMetricsSummaries() {
+        return regressionMetricsTracker.summaries(trainingSetStore.snapshot());
     }
 
     private RegressionResult calculateFinalMetrics(String sessionId, String regressionMethod,
-            List<PromptRefinement> historicalData) {
+            TrainingSnapshot historicalData) {
 
         // if dataset size is too small to perform regression, simply return the status
         // as insufficient to perform any form of prompt refinement
@@ -151,17 +266,8 @@ public class PromptRefinementService {
                     .build();
         }
 
-        // collect all of the actual and predicted scores from historical data
-        List<Double> actualScores = historicalData.stream()
-                .map(PromptRefinement::getQualityScore)
-                .collect(Collectors.toList());
-
-        List<Double> predictedScores = historicalData.stream()
-                .map(PromptRefinement::getPredictedScore)
-                .collect(Collectors.toList());
-
-        // compute metrics
-        Map<String, Double> metrics = regressionModelsService.calculateMetrics(actualScores, predictedScores);
+        // running metrics over every prediction in the history, this session's included
+        Map<String, Double> metrics = regressionMetricsTracker.overall(historicalData);
 
         // update the metrics in DB
         RegressionMetrics metricsEntity = new RegressionMetrics();
@@ -186,56 +292,127 @@ public class PromptRefinementService {
 
     }
 
-    private String refinePromptWithOllama(String currentPrompt, String feedback, double currentScore) throws Exception {
+    /**
+     * Generates {@code candidates} rewrites of the beam concurrently, spread across its prompts with
+     * varied temperature and seed, and keeps the {@code width} best by quality score. The beam's own
+     * prompts compete with their rewrites, so the best prompt never gets worse from one round to the
+     * next.
+     */
+    private BeamRound expandBeam(List<String> beam, FeatureVector featureWeights, RefinementRequest request,
+            TrainingSnapshot historicalData, int candidates, int width, int seed) throws Exception {
+        List<ScoredPrompt> pool = new ArrayList<>();
+        for (String prompt : beam) {
+            pool.add(scorePrompt(prompt, featureWeights, request, historicalData));
+        }
+
+        List<CompletableFuture<ScoredPrompt>> rewrites = new ArrayList<>(candidates);
+        for (int k = 0; k < candidates; k++) {
+            ScoredPrompt parent = pool.get(k % beam.size());
+            Map<String, Object> options = Map.of("temperature", candidateTemperature(k, candidates), "seed", seed + k);
+            rewrites.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    // candidates diverge, so each starts a chat of its own without an affinity key:
+                    // the shared prefix is only the system message, not worth pinning every
+                    // candidate to one backend instead of spreading them over the least loaded
+                    String rewrite = refinePromptWithOllama(newConversation(null), parent.prompt,
+                            parent.feedback, parent.qualityScore, options);
+                    return scorePrompt(rewrite, featureWeights, request, historicalData);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, beamExecutor));
+        }
+
+        // a failed candidate only narrows the round; the session fails if every candidate did
+        int evaluated = 0;
+        Throwable failure = null;
+        for (CompletableFuture<ScoredPrompt> rewrite : rewrites) {
+            try {
+                pool.add(rewrite.join());
+                evaluated++;
+            } catch (CompletionException e) {
+                failure = e.getCause();
+                log.warn("Beam candidate failed: {}", failure.getMessage());
+            }
+        }
+        if (evaluated == 0) {
+            throw failure instanceof Exception cause ? cause : new IllegalStateException(failure);
+        }
+
+        pool.sort(Comparator.comparingDouble((ScoredPrompt p) -> p.qualityScore)
+                .thenComparingDouble(p -> p.predictedScore)
+                .reversed());
+        List<String> next = pool.stream()
+                .map(p -> p.prompt)
+                .distinct()
+                .limit(width)
+                .collect(Collectors.toList());
+        log.info("Beam round: {} candidates scored, best quality {}", evaluated,
+                String.format("%.3f", pool.get(0).qualityScore));
+        return new BeamRound(next, evaluated);
+    }
+
+    private double candidateTemperature(int k, int candidates) {
+        double spread = mlConfig.getBeam().getTemperatureSpread();
+        double temperature = mlConfig.getBeam().getTemperature() - spread / 2 + spread * k / (candidates - 1);
+        return Math.max(0.0, temperature);
+    }
+
+    private ScoredPrompt scorePrompt(String prompt, FeatureVector featureWeights, RefinementRequest request,
+            TrainingSnapshot historicalData) {
+        FeatureVector features = featureExtractionService.extractFeatures(prompt);
+        double qualityScore = featureExtractionService.calculateQualityScore(features, featureWeights);
+        double predictedScore = predictScore(request.getRegressionMethod(), features, historicalData);
+        String feedback = generateFeedback(features, featureWeights, request.getOptimizationGoals());
+        return new ScoredPrompt(prompt, qualityScore, predictedScore, feedback);
+    }
+
+    // a null session id routes every call to the least loaded backend
+    private OllamaConversation newConversation(String sessionId) {
+        return new OllamaConversation(sessionId, REFINEMENT_SYSTEM_PROMPT, ollamaConfig.getChatHistoryMaxChars());
+    }
+
+    private String refinePromptWithOllama(OllamaConversation conversation, String currentPrompt, String feedback,
+            double currentScore, Map<String, Object> options) throws Exception {
         String refinementPrompt = String.format(
-                "You are a prompt engineering expert. Your task is to improve the following prompt.\n\n" +
-                        "Current Prompt:\n%s\n\n" +
+                "Current Prompt:\n%s\n\n" +
                         "Current Quality Score: %.2f\n\n" +
-                        "Feedback:\n%s\n\n" +
-                        "Please provide an improved version of the prompt that addresses the feedback. " +
-                        "Return ONLY the improved prompt, no explanations or preamble.",
+                        "Feedback:\n%s",
                 currentPrompt, currentScore, feedback);
 
-        String response = ollamaService.queryWithContext(refinementPrompt, "");
+        String response = ollamaService.chat(conversation, refinementPrompt, OllamaPriority.REFINEMENT, options);
 
         return response.trim();
     }
 
-    private void updateFeatureWeights(Map<String, Double> featureWeights, double actualScore, double predictedScore,
-            Map<String, Double> features) {
+    private void updateFeatureWeights(FeatureVector featureWeights, double actualScore, double predictedScore,
+            FeatureVector features) {
         double error = actualScore - predictedScore;
 
         // loop through the features and perform one set of weight update post grad
         // descent
-        for (Map.Entry<String, Double> entry : features.entrySet()) {
-            String featureName = entry.getKey();
-            Double featureValue = entry.getValue();
+        for (FeatureSchema feature : FeatureSchema.values()) {
+            double featureValue = features.get(feature);
 
             // perform weight update - for linear model with a squared loss : wj ← wj-1 −
             // η⋅(error * xj)
             // where wj is newWeight; wj-1 is currentWeight; η is LEARNING_RATE; error is
             // the difference between actualScore and predictedScore; xj is featureValue
-            double currentWeight = featureWeights.get(featureName);
+            double currentWeight = featureWeights.get(feature);
             double gradient = error * featureValue;
             double newWeight = currentWeight - LEARNING_RATE * gradient;
 
-            // clip weights between 0 and 1 and add in featureWeights DB
+            // clip weights between 0 and 1; the shared store takes the same step atomically on
+            // its own value and persists it in the background
             newWeight = Math.max(0.0, Math.min(1.0, newWeight));
-            featureWeights.put(featureName, newWeight);
-            updateFeatureWeightInDb(featureName, newWeight);
+            featureWeights.set(feature, newWeight);
+            featureWeightStore.add(feature, -LEARNING_RATE * gradient);
         }
     }
 
-    private void updateFeatureWeightInDb(String featureName, double newWeight) {
-        FeatureWeight fw = featureWeightRepository.findByFeatureName(featureName)
-                .orElse(new FeatureWeight());
-        fw.setFeatureName(featureName);
-        fw.updateWeight(newWeight);
-        featureWeightRepository.save(fw);
-    }
-
     private PromptRefinement saveRefinement(String sessionId, String currentPrompt, int iteration, double qualityScore,
-            double predictedScore, Map<String, Double> features, String feedback, RefinementRequest request) {
+            double predictedScore, FeatureVector features, String feedback, RefinementRequest request,
+            boolean converged) {
         PromptRefinement refinement = new PromptRefinement();
         refinement.setSessionId(sessionId);
         refinement.setOriginalPrompt(iteration == 0 ? currentPrompt : request.getPrompt());
@@ -243,28 +420,31 @@ public class PromptRefinementService {
         refinement.setIterationNumber(iteration);
         refinement.setQualityScore(qualityScore);
         refinement.setPredictedScore(predictedScore);
-        refinement.setClarityScore(features.get("semanticClarity"));
-        refinement.setRelevanceScore(features.get("contextRelevance"));
-        refinement.setSpecificityScore(features.get("specificityScore"));
-        refinement.setCompletenessScore(features.get("completenessScore"));
+        refinement.setClarityScore(features.get(FeatureSchema.SEMANTIC_CLARITY));
+        refinement.setRelevanceScore(features.get(FeatureSchema.CONTEXT_RELEVANCE));
+        refinement.setSpecificityScore(features.get(FeatureSchema.SPECIFICITY_SCORE));
+        refinement.setCompletenessScore(features.get(FeatureSchema.COMPLETENESS_SCORE));
         refinement.setRegressionMethod(request.getRegressionMethod());
         refinement.setFeedback(feedback);
-        refinement.setExtractedFeatures(features);
+        refinement.setExtractedFeatures(features.toMap());
         refinement.setMaxIterations(request.getMaxIterations());
         refinement.setConvergenceThreshold(request.getConvergenceThreshold());
         refinement.setOptimizationGoals(request.getOptimizationGoals());
+        refinement.setConverged(converged);
 
-        return refinementRepository.save(refinement);
+        PromptRefinement saved = refinementRepository.save(refinement);
+        trainingSetStore.appendAfterCommit(saved);
+        return saved;
     }
 
-    private String generateFeedback(Map<String, Double> features, Map<String, Double> weights,
+    private String generateFeedback(FeatureVector features, FeatureVector weights,
             List<String> optimizationGoals) {
         StringBuilder feedback = new StringBuilder();
         feedback.append("ANALYSIS: \n");
 
         // sort the features according to their score * weight
-        List<Map.Entry<String, Double>> sortedFeatures = features.entrySet().stream()
-                .sorted(Comparator.comparingDouble(e -> e.getValue() * weights.getOrDefault(e.getKey(), 0.0)))
+        List<FeatureSchema> sortedFeatures = Arrays.stream(FeatureSchema.values())
+                .sorted(Comparator.comparingDouble(f -> features.get(f) * weights.get(f)))
                 .collect(Collectors.toList());
 
         feedback.append("\nAreas for improvement:\n");
@@ -275,9 +455,9 @@ public class PromptRefinementService {
         // score, formatted to two decimal places.
         // Produces a short list of top problem areas.
         for (int i = 0; i < Math.min(3, sortedFeatures.size()); i++) {
-            Map.Entry<String, Double> entry = sortedFeatures.get(i);
+            FeatureSchema feature = sortedFeatures.get(i);
             feedback.append(String.format("- %s (score: %.2f)\n",
-                    entry.getKey(), entry.getValue()));
+                    feature.getFeatureName(), features.get(feature)));
         }
 
         // adds a "Recommendations:" header and appends goal‑specific recommendation
@@ -293,7 +473,7 @@ public class PromptRefinementService {
 
     }
 
-    private Object getRecommendation(String goal, Map<String, Double> features) {
+    private Object getRecommendation(String goal, FeatureVector features) {
         // basic examples of recommendations for each goal
         switch (goal.toUpperCase()) {
             case "CLARITY":
@@ -309,63 +489,34 @@ public class PromptRefinementService {
         }
     }
 
-    private double predictScore(String regressionMethod, Map<String, Double> features,
-            List<PromptRefinement> historicalData) {
+    private double predictScore(String regressionMethod, FeatureVector features,
+            TrainingSnapshot historicalData) {
         if (historicalData.isEmpty()) {
             return 0.5;
         }
 
-        List<Map<String, Double>> historicalFeatures = historicalData.stream()
-                .map(PromptRefinement::getExtractedFeatures)
-                .collect(Collectors.toList());
-
-        List<Double> historicalScores = historicalData.stream()
-                .map(PromptRefinement::getQualityScore)
-                .collect(Collectors.toList());
-
         switch (regressionMethod.toUpperCase()) {
             case "LINEAR":
-                return regressionModelsService.predictLinearRegression(
-                        features, historicalFeatures, historicalScores);
+                return regressionModelsService.predictLinearRegression(features, historicalData);
             case "POLYNOMIAL":
-                return regressionModelsService.predictPolynomialRegression(
-                        features, historicalFeatures, historicalScores);
+                return regressionModelsService.predictPolynomialRegression(features, historicalData);
             case "NEURAL":
-                return regressionModelsService.predictDNN(
-                        features, historicalFeatures, historicalScores);
+                return regressionModelsService.predictDNN(features, historicalData);
+            case "AUTO":
+                return regressionModelsService.predictAuto(features, historicalData);
             case "ENSEMBLE":
             default:
-                return regressionModelsService.predictEnsemble(
-                        features, historicalFeatures, historicalScores);
+                return regressionModelsService.predictEnsemble(features, historicalData);
         }
     }
 
-    private Map<String, Double> initializeFeatureWeights(Map<String, Double> featureWeights) {
-        Map<String, Double> weights = new HashMap<>();
-
-        weights.put("semanticClarity", 0.15);
-        weights.put("contextRelevance", 0.15);
-        weights.put("specificityScore", 0.12);
-        weights.put("ambiguityScore", 0.10);
-        weights.put("lexicalDiversity", 0.08);
-        weights.put("completenessScore", 0.08);
-        weights.put("hasContext", 0.07);
-        weights.put("hasConstraints", 0.06);
-        weights.put("structuralComplexity", 0.05);
-        weights.put("wordCount", 0.04);
-        weights.put("sentenceCount", 0.03);
-        weights.put("avgWordLength", 0.02);
-        weights.put("punctuationRatio", 0.02);
-        weights.put("hasExamples", 0.01);
-        weights.put("hasVerbs", 0.01);
-        weights.put("hasNouns", 0.01);
-        weights.put("hasAdjectives", 0.01);
-
-        List<FeatureWeight> dbWeights = featureWeightRepository.findAll();
-        for (FeatureWeight fw : dbWeights) {
-            weights.put(fw.getFeatureName(), fw.getWeight());
-        }
-
+    /**
+     * @param featureWeights custom weights by feature name, may be null
+     * @return the weights a session scores with
+     */
+    public FeatureVector resolveFeatureWeights(Map<String, Double> featureWeights) {
+        // learned weights (schema defaults until learned), overridden by the request's custom weights
+        FeatureVector weights = featureWeightStore.snapshot();
         if (featureWeights != null) {
             weights.putAll(featureWeights);
         }
@@ -373,4 +524,27 @@ public class PromptRefinementService {
         return weights;
     }
 
+    private static class ScoredPrompt {
+        private final String prompt;
+        private final double qualityScore;
+        private final double predictedScore;
+        private final String feedback;
+
+        ScoredPrompt(String prompt, double qualityScore, double predictedScore, String feedback) {
+            this.prompt = prompt;
+            this.qualityScore = qualityScore;
+            this.predictedScore = predictedScore;
+            this.feedback = feedback;
+        }
+    }
+
+    private static class BeamRound {
+        private final List<String> prompts;
+        private final int evaluated;
+
+        BeamRound(List<String> prompts, int evaluated) {
+            this.prompts = prompts;
+            this.evaluated = evaluated;
+        }
+    }
 }
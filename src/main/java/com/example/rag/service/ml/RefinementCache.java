@@ -0,0 +1,230 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.nestedDtos.IterationDetail;
+import com.example.rag.dto.requestDtos.RefinementRequest;
+import com.example.rag.dto.responseDtos.RefinementResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Converged refinement sessions, kept so a repeated prompt is answered without any LLM call.
+ * Entries are keyed by the normalised prompt plus the parameters that shape the result (method,
+ * goals, threshold, custom weights, beam width and candidates). Near duplicates are found through MinHash signatures of the
+ * prompt's shingles, bucketed by LSH bands so a lookup only compares against likely matches.
+ * An entry is dropped once it outlives the TTL or the learned weights it was scored with drift
+ * further than the tolerance.
+ */
+@Component
+@Slf4j
+public class RefinementCache {
+
+    private static final int HASHES = 64;
+    private static final int BAND_ROWS = 4;
+    private static final int SHINGLE_SIZE = 4;
+
+    private final MinHash minHash = new MinHash(HASHES, SHINGLE_SIZE, 0x5eedL);
+    private final FeatureWeightStore featureWeightStore;
+    private final MlConfig.Cache config;
+
+    // guarded by this; access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+
+    public RefinementCache(FeatureWeightStore featureWeightStore, MlConfig config) {
+        this.featureWeightStore = featureWeightStore;
+        this.config = config.getCache();
+    }
+
+    /**
+     * @return a copy of the cached response for this or a near-duplicate request, marked as a hit
+     */
+    public synchronized Optional<RefinementResponse> lookup(RefinementRequest request) {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        String prompt = normalize(request.getPrompt());
+        String params = parameterKey(request);
+        double[] weights = featureWeightStore.snapshot().values();
+
+        Entry exact = entries.get(params + '\u0000' + prompt);
+        if (exact != null && isFresh(exact, weights)) {
+            return Optional.of(hit(exact, request, 1.0));
+        }
+
+        int[] signature = minHash.signature(prompt);
+        Entry best = null;
+        double bestSimilarity = config.getSimilarityThreshold();
+        for (long band : bandKeys(params, signature)) {
+            for (Entry candidate : buckets.getOrDefault(band, List.of())) {
+                double similarity = MinHash.similarity(signature, candidate.signature);
+                if (candidate.params.equals(params) && similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        if (best != null && isFresh(best, weights)) {
+            entries.get(best.key); // touch for LRU
+            return Optional.of(hit(best, request, bestSimilarity));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Caches a finished session; only converged ones are worth serving again.
+     */
+    public synchronized void put(RefinementRequest request, RefinementResponse response) {
+        if (!config.isEnabled() || !Boolean.TRUE.equals(response.getConverged())) {
+            return;
+        }
+        String prompt = normalize(request.getPrompt());
+        String params = parameterKey(request);
+        Entry entry = new Entry(params + '\u0000' + prompt, params, minHash.signature(prompt), response,
+                featureWeightStore.snapshot().values(), System.currentTimeMillis());
+        Entry replaced = entries.put(entry.key, entry);
+        if (replaced != null) {
+            unbucket(replaced);
+        }
+        for (long band : entry.bands) {
+            buckets.computeIfAbsent(band, key -> new ArrayList<>(1)).add(entry);
+        }
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > config.getMaxEntries() && eldest.hasNext()) {
+            unbucket(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        buckets.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean isFresh(Entry entry, double[] weights) {
+        boolean expired = System.currentTimeMillis() - entry.createdAt > TimeUnit.MINUTES.toMillis(config.getTtlMinutes());
+        double drift = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            drift = Math.max(drift, Math.abs(weights[i] - entry.weights[i]));
+        }
+        if (expired || drift > config.getWeightDriftTolerance()) {
+            log.debug("Dropping cached refinement {} (expired: {}, weight drift: {})",
+                    entry.response.getSessionId(), expired, drift);
+            entries.remove(entry.key);
+            unbucket(entry);
+            return false;
+        }
+        return true;
+    }
+
+    private RefinementResponse hit(Entry entry, RefinementRequest request, double similarity) {
+        log.info("Serving refinement from cached session {} (similarity {})", entry.response.getSessionId(),
+                String.format("%.2f", similarity));
+        // callers replay and may modify the iterations, which must not reach the cached entry
+        List<IterationDetail> iterations = null;
+        if (entry.response.getIterations() != null) {
+            iterations = new ArrayList<>(entry.response.getIterations().size());
+            for (IterationDetail detail : entry.response.getIterations()) {
+                iterations.add(detail.toBuilder()
+                        .features(detail.getFeatures() != null ? new HashMap<>(detail.getFeatures()) : null)
+                        .build());
+            }
+        }
+        Map<String, Double> finalFeatures = entry.response.getFinalFeatures();
+        return entry.response.toBuilder()
+                .originalPrompt(request.getPrompt())
+                .iterations(iterations)
+                .finalFeatures(finalFeatures != null ? new HashMap<>(finalFeatures) : null)
+                .cacheHit(true)
+                .cachedSessionId(entry.response.getSessionId())
+                .cacheSimilarity(similarity)
+                .build();
+    }
+
+    private void unbucket(Entry entry) {
+        for (long band : entry.bands) {
+            List<Entry> bucket = buckets.get(band);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    buckets.remove(band);
+                }
+            }
+        }
+    }
+
+    private static long[] bandKeys(String params, int[] signature) {
+        long[] keys = new long[signature.length / BAND_ROWS];
+        for (int band = 0; band < keys.length; band++) {
+            long key = params.hashCode() * 31L + band;
+            for (int row = band * BAND_ROWS; row < (band + 1) * BAND_ROWS; row++) {
+                key = key * 1_000_003L + signature[row];
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    static String normalize(String prompt) {
+        String normalized = prompt.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        int end = normalized.length();
+        while (end > 0 && ".!?".indexOf(normalized.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return normalized.substring(0, end).trim();
+    }
+
+    static String parameterKey(RefinementRequest request) {
+        List<String> goals = new ArrayList<>();
+        if (request.getOptimizationGoals() != null) {
+            request.getOptimizationGoals().forEach(goal -> goals.add(goal.toUpperCase(Locale.ROOT)));
+        }
+        goals.sort(null);
+        Map<String, Double> weights = request.getFeatureWeights() != null
+                ? new TreeMap<>(request.getFeatureWeights())
+                : Map.of();
+        String method = request.getRegressionMethod() != null ? request.getRegressionMethod() : "ENSEMBLE";
+        return method.toUpperCase(Locale.ROOT) + '|' + goals + '|' + request.getConvergenceThreshold() + '|'
+                + weights + '|' + request.getBeamWidth() + '|' + request.getBeamCandidates();
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String params;
+        private final int[] signature;
+        private final long[] bands;
+        private final RefinementResponse response;
+        // learned weights when the session ran
+        private final double[] weights;
+        private final long createdAt;
+
+        Entry(String key, String params, int[] signature, RefinementResponse response, double[] weights,
+                long createdAt) {
+            this.key = key;
+            this.params = params;
+            this.signature = signature;
+            this.bands = bandKeys(params, signature);
+            this.response = response;
+            this.weights = weights;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.rag.service.ml;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.rag.dto.nestedDtos.IterationDetail;
+import com.example.rag.dto.responseDtos.RefinementJobStatus;
+import com.example.rag.dto.responseDtos.RefinementResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A refinement session running in the background. Iterations are kept as they are reported and
+ * pushed to every subscribed SSE emitter; a subscriber joining late is replayed what it missed.
+ * Events are {@code iteration} ({@link IterationDetail}), then one of {@code completed}
+ * ({@link RefinementResponse}), {@code failed} or {@code cancelled}. Each subscriber has its own
+ * queue, written under the job's monitor and sent in order on a separate executor, so a slow
+ * client holds up neither the refinement nor other callers of the job.
+ */
+@Slf4j
+public class RefinementJob implements RefinementProgress {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String sessionId;
+    private final Executor events;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private volatile boolean cancelRequested;
+
+    // guarded by this
+    private final List<IterationDetail> iterations = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private RefinementResponse result;
+    private String error;
+    private long finishedAt;
+
+    RefinementJob(String sessionId, Executor events) {
+        this.sessionId = sessionId;
+        this.events = events;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Status getStatus() {
+        return status.get();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    @Override
+    public synchronized void onIteration(IterationDetail detail) {
+        iterations.add(detail);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer("iteration", detail, false);
+        }
+    }
+
+    public synchronized RefinementJobStatus toStatus() {
+        return RefinementJobStatus.builder()
+                .sessionId(sessionId)
+                .status(status.get().name())
+                .iterationsCompleted(iterations.size())
+                .result(result)
+                .error(error)
+                .build();
+    }
+
+    /**
+     * Replays the iterations so far, then streams the rest, completing once the job finishes.
+     */
+    public synchronized void subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        for (IterationDetail detail : iterations) {
+            subscriber.offer("iteration", detail, false);
+        }
+        if (status.get().isFinished()) {
+            offerFinished(subscriber);
+            return;
+        }
+        subscribers.add(subscriber);
+        Runnable remove = () -> unsubscribe(subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+    }
+
+    /**
+     * @return true when the job was queued and is now cancelled without running, false when it is
+     *         running (it stops before its next iteration) or already finished
+     */
+    synchronized boolean cancel() {
+        cancelRequested = true;
+        if (status.compareAndSet(Status.QUEUED, Status.CANCELLED)) {
+            finished(null, "Cancelled before it started");
+            return true;
+        }
+        return false;
+    }
+
+    boolean start() {
+        return status.compareAndSet(Status.QUEUED, Status.RUNNING);
+    }
+
+    synchronized void complete(RefinementResponse response) {
+        if (status.compareAndSet(Status.RUNNING, Status.COMPLETED)) {
+            finished(response, null);
+        }
+    }
+
+    synchronized void fail(Status outcome, String message) {
+        if (status.compareAndSet(Status.RUNNING, outcome)) {
+            finished(null, message);
+        }
+    }
+
+    synchronized boolean finishedBefore(long cutoff) {
+        return status.get().isFinished() && finishedAt < cutoff;
+    }
+
+    // must hold the monitor, so subscribers never see a finished status without its outcome
+    private void finished(RefinementResponse response, String message) {
+        result = response;
+        error = message;
+        finishedAt = System.currentTimeMillis();
+        subscribers.forEach(this::offerFinished);
+        subscribers.clear();
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // must hold the monitor
+    private void offerFinished(Subscriber subscriber) {
+        Status outcome = status.get();
+        Object data = outcome == Status.COMPLETED ? result : Map.of("error", error != null ? error : "");
+        subscriber.offer(outcome.name().toLowerCase(), data, true);
+    }
+
+    private boolean send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // client went away; the job carries on and stays queryable
+            log.debug("Dropping subscriber of job {}: {}", sessionId, e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Events waiting for one emitter, sent by at most one executor task at a time.
+     */
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        // guarded by this
+        private final Deque<Event> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean dropped;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(String name, Object data, boolean last) {
+            synchronized (this) {
+                if (dropped) {
+                    return;
+                }
+                pending.add(new Event(name, data, last));
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                events.execute(this);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                drop();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = pending.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (!send(emitter, event.name, event.data)) {
+                    drop();
+                    unsubscribe(this);
+                    return;
+                }
+                if (event.last) {
+                    emitter.complete();
+                }
+            }
+        }
+
+        private synchronized void drop() {
+            dropped = true;
+            pending.clear();
+        }
+    }
+
+    private static class Event {
+        private final String name;
+        private final Object data;
+        private final boolean last;
+
+        Event(String name, Object data, boolean last) {
+            this.name = name;
+            this.data = data;
+            this.last = last;
+        }
+    }
+}
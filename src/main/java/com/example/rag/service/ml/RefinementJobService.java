@@ -0,0 +1,90 @@
+package com.example.rag.service.ml;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.requestDtos.RefinementRequest;
+import com.example.rag.dto.responseDtos.RefinementResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs refinement sessions as background jobs so the submitting request returns at once with the
+ * session id. Progress is followed through {@link RefinementJob#subscribe}; finished jobs are
+ * forgotten after {@code ml.jobs.retention-minutes}.
+ */
+@Service
+@Slf4j
+public class RefinementJobService {
+
+    private final PromptRefinementService promptRefinementService;
+    private final ExecutorService executor;
+    private final ExecutorService eventExecutor;
+    private final long retentionMillis;
+    private final Map<String, RefinementJob> jobs = new ConcurrentHashMap<>();
+
+    public RefinementJobService(PromptRefinementService promptRefinementService, MlConfig config,
+            @Qualifier("refinementJobExecutor") ExecutorService executor,
+            @Qualifier("refinementEventExecutor") ExecutorService eventExecutor) {
+        this.promptRefinementService = promptRefinementService;
+        this.executor = executor;
+        this.eventExecutor = eventExecutor;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(config.getJobs().getRetentionMinutes());
+    }
+
+    public RefinementJob submit(RefinementRequest request) {
+        evictFinished();
+        RefinementJob job = new RefinementJob(UUID.randomUUID().toString(), eventExecutor);
+        jobs.put(job.getSessionId(), job);
+        executor.execute(() -> run(job, request));
+        log.info("Queued refinement job {}", job.getSessionId());
+        return job;
+    }
+
+    public Optional<RefinementJob> get(String sessionId) {
+        return Optional.ofNullable(jobs.get(sessionId));
+    }
+
+    /**
+     * Cancels a queued job outright; a running one stops before its next iteration, keeping the
+     * iterations it already committed.
+     */
+    public Optional<RefinementJob> cancel(String sessionId) {
+        RefinementJob job = jobs.get(sessionId);
+        if (job != null && !job.cancel()) {
+            log.info("Cancellation requested for running refinement job {}", sessionId);
+        }
+        return Optional.ofNullable(job);
+    }
+
+    private void run(RefinementJob job, RefinementRequest request) {
+        if (!job.start()) {
+            // cancelled while queued
+            return;
+        }
+        try {
+            RefinementResponse response = promptRefinementService.refinePrompt(job.getSessionId(), request, job);
+            job.complete(response);
+        } catch (CancellationException e) {
+            log.info("Refinement job {} cancelled", job.getSessionId());
+            job.fail(RefinementJob.Status.CANCELLED, e.getMessage());
+        } catch (Exception e) {
+            log.error("Refinement job {} failed", job.getSessionId(), e);
+            job.fail(RefinementJob.Status.FAILED, "Failed to refine prompt: " + e.getMessage());
+        }
+    }
+
+    private void evictFinished() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> job.finishedBefore(cutoff));
+    }
+}
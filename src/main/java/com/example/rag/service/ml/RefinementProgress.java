@@ -0,0 +1,26 @@
+package com.example.rag.service.ml;
+
+import com.example.rag.dto.nestedDtos.IterationDetail;
+
+/**
+ * Observes a refinement session as it runs, see
+ * {@link PromptRefinementService#refinePrompt(String, com.example.rag.dto.requestDtos.RefinementRequest, RefinementProgress)}.
+ */
+public interface RefinementProgress {
+
+    RefinementProgress NONE = detail -> {
+    };
+
+    /**
+     * Called on the session's thread once an iteration has been committed.
+     */
+    void onIteration(IterationDetail detail);
+
+    /**
+     * Checked before each iteration; the session stops with a
+     * {@link java.util.concurrent.CancellationException} once this returns true.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
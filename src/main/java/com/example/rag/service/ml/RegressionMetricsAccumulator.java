@@ -0,0 +1,66 @@
+package com.example.rag.service.ml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running regression error metrics over (actual, predicted) pairs, updated in O(1) per pair.
+ * The actual scores' mean and sum of squared deviations are kept Welford-style, so R² needs no
+ * second pass. Gives the same mse, rmse, mae and R² (0 when the actual scores are constant) as
+ * the two-pass definitions over the same pairs.
+ */
+public class RegressionMetricsAccumulator {
+
+    private long count;
+    private double meanActual;
+    // sum of squared deviations of the actual scores from their mean
+    private double ssTot;
+    private double ssRes;
+    private double sumAbsError;
+
+    public void add(double actual, double predicted) {
+        count++;
+        double delta = actual - meanActual;
+        meanActual += delta / count;
+        ssTot += delta * (actual - meanActual);
+
+        double error = actual - predicted;
+        ssRes += error * error;
+        sumAbsError += Math.abs(error);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double mse() {
+        return count > 0 ? ssRes / count : Double.NaN;
+    }
+
+    public double rmse() {
+        return Math.sqrt(mse());
+    }
+
+    public double mae() {
+        return count > 0 ? sumAbsError / count : Double.NaN;
+    }
+
+    public double rSquared() {
+        return ssTot > 0 ? 1 - ssRes / ssTot : 0.0;
+    }
+
+    /**
+     * @return mse, rmse, mae and rSquared by name, empty before the first pair
+     */
+    public Map<String, Double> toMap() {
+        Map<String, Double> metrics = new HashMap<>();
+        if (count == 0) {
+            return metrics;
+        }
+        metrics.put("mse", mse());
+        metrics.put("rmse", rmse());
+        metrics.put("mae", mae());
+        metrics.put("rSquared", rSquared());
+        return metrics;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.rag.service.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.rag.dto.responseDtos.MetricsSummary;
+
+/**
+ * Per regression method and overall error metrics of the history's predictions, kept current as
+ * refinements commit. Each row is absorbed once, so reading the metrics costs O(methods) however
+ * long the history is. Rows saved without a prediction are skipped.
+ */
+@Component
+public class RegressionMetricsTracker {
+
+    public static final String ALL_METHODS = "ALL";
+
+    // guarded by this
+    private final Map<String, RegressionMetricsAccumulator> byMethod = new TreeMap<>();
+    private final Map<String, Integer> sessionsByMethod = new TreeMap<>();
+    private final RegressionMetricsAccumulator overall = new RegressionMetricsAccumulator();
+    private int sessions;
+    private int absorbed;
+
+    @EventListener
+    public void onTrainingSetUpdated(TrainingSetUpdatedEvent event) {
+        absorb(event.getSnapshot());
+    }
+
+    /**
+     * @return the metrics over every prediction in {@code history} and any rows after it
+     */
+    public synchronized Map<String, Double> overall(TrainingSnapshot history) {
+        absorb(history);
+        return overall.toMap();
+    }
+
+    /**
+     * @return one summary per regression method, then one across all methods
+     */
+    public synchronized List<MetricsSummary> summaries(TrainingSnapshot history) {
+        absorb(history);
+        List<MetricsSummary> summaries = new ArrayList<>();
+        byMethod.forEach((method, metrics) -> summaries.add(summary(method, metrics,
+                sessionsByMethod.getOrDefault(method, 0))));
+        summaries.add(summary(ALL_METHODS, overall, sessions));
+        return summaries;
+    }
+
+    synchronized void absorb(TrainingSnapshot history) {
+        // the store only appends, so a snapshot extends the rows already absorbed
+        for (int i = absorbed; i < history.size(); i++) {
+            String method = history.method(i) != null ? history.method(i).toUpperCase(Locale.ROOT) : "UNKNOWN";
+            if (history.iterationNumber(i) == 0) {
+                sessions++;
+                sessionsByMethod.merge(method, 1, Integer::sum);
+            }
+            double predicted = history.predictedScore(i);
+            if (Double.isNaN(predicted)) {
+                continue;
+            }
+            double actual = history.qualityScore(i);
+            overall.add(actual, predicted);
+            byMethod.computeIfAbsent(method, key -> new RegressionMetricsAccumulator()).add(actual, predicted);
+        }
+        absorbed = Math.max(absorbed, history.size());
+    }
+
+    private static MetricsSummary summary(String method, RegressionMetricsAccumulator metrics, int sessions) {
+        boolean empty = metrics.getCount() == 0;
+        return MetricsSummary.builder()
+                .method(method)
+                .averageMse(empty ? null : metrics.mse())
+                .averageRmse(empty ? null : metrics.rmse())
+                .averageMae(empty ? null : metrics.mae())
+                .averageRSquared(empty ? null : metrics.rSquared())
+                .totalSessions(sessions)
+                .predictions(metrics.getCount())
+                .build();
+    }
+}
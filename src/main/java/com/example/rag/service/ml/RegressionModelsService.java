@@ -1,38 +1,125 @@
 package com.example.rag.service.ml;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
-import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
-import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
-import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
-import org.deeplearning4j.nn.conf.layers.DenseLayer;
-import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
-import org.deeplearning4j.nn.conf.layers.OutputLayer;
-import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.deeplearning4j.nn.weights.WeightInit;
-import org.nd4j.linalg.activations.Activation;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.learning.config.Adam;
 
-import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.responseDtos.EnsembleMemberStats;
+import com.example.rag.service.ml.IncrementalLeastSquares.State;
+import com.example.rag.service.ml.InferenceBatcher.BatchStats;
+import com.example.rag.service.ml.NeuralNetworkTrainer.NetworkSnapshot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
 public class RegressionModelsService {
 
-    // DNN params
-    private static final int NEURAL_INPUT_SIZE = 17;
-    private static final int NEURAL_HIDDEN_SIZE = 32;
-    private static final int NEURAL_NUM_EPOCHS = 100;
-    private static final double NEURAL_LEARNING_RATE = 0.001;
+    // polynomial interaction terms are limited to the first few schema columns
+    private static final int POLY_INTERACTION_FEATURES = 5;
+    private static final int[][] POLY_INTERACTIONS = interactionPairs(POLY_INTERACTION_FEATURES);
+    private static final int POLY_FEATURE_COUNT = FeatureSchema.SIZE * 2 + POLY_INTERACTIONS.length;
+    // ENSEMBLE member weights by method
+    static final Map<String, Double> DEFAULT_ENSEMBLE_WEIGHTS = Map.of("LINEAR", 0.3, "POLYNOMIAL", 0.3, "NEURAL", 0.4);
+    private static final List<String> ENSEMBLE_MEMBERS = List.of("LINEAR", "POLYNOMIAL", "NEURAL");
+
+    private final IncrementalLeastSquares linearModel = new IncrementalLeastSquares(UnaryOperator.identity());
+    private final IncrementalLeastSquares polynomialModel = new IncrementalLeastSquares(
+            RegressionModelsService::addPolynomialFeatures);
+
+    private final NeuralNetworkTrainer neuralNetworkTrainer;
+    private final InferenceBatcher inferenceBatcher;
+    private final ExecutorService ensembleExecutor;
+    private final TrainingSetStore trainingSetStore;
+    private final ModelStore modelStore;
+    private final ModelSelectionService modelSelectionService;
+    private final EnsembleMemberTracker ensembleMemberTracker;
+
+    // row counts of the least-squares states last written to the model store
+    private int savedLinearSamples;
+    private int savedPolynomialSamples;
+
+    public RegressionModelsService(NeuralNetworkTrainer neuralNetworkTrainer, MlConfig config,
+            @Qualifier("ensembleExecutor") ExecutorService ensembleExecutor, TrainingSetStore trainingSetStore,
+            ModelStore modelStore, ModelSelectionService modelSelectionService,
+            EnsembleMemberTracker ensembleMemberTracker) {
+        this.neuralNetworkTrainer = neuralNetworkTrainer;
+        this.ensembleExecutor = ensembleExecutor;
+        this.trainingSetStore = trainingSetStore;
+        this.modelStore = modelStore;
+        this.modelSelectionService = modelSelectionService;
+        this.ensembleMemberTracker = ensembleMemberTracker;
+        // concurrent sessions share forward passes instead of each running a 1-row output()
+        this.inferenceBatcher = new InferenceBatcher("dnn-inference", neuralNetworkTrainer::predictBatch,
+                config.getNeural().getInferenceBatchSize(),
+                config.getNeural().getInferenceMaxWaitMicros(), TimeUnit.MICROSECONDS);
+    }
+
+    @PostConstruct
+    public void warmStart() {
+        // in the background; a request arriving first simply fits from the history itself
+        CompletableFuture.runAsync(() -> {
+            TrainingSnapshot history = trainingSetStore.snapshot();
+            restore("linear", linearModel, history);
+            restore("polynomial", polynomialModel, history);
+        }, ensembleExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        inferenceBatcher.close();
+        saveModels();
+    }
 
-    private MultiLayerNetwork neuralNetwork;
+    /**
+     * Writes the least-squares states that absorbed rows since they were last saved.
+     */
+    @Scheduled(fixedDelayString = "${ml.model-save-interval-millis:60000}")
+    public synchronized void saveModels() {
+        savedLinearSamples = save("linear", linearModel, savedLinearSamples);
+        savedPolynomialSamples = save("polynomial", polynomialModel, savedPolynomialSamples);
+    }
+
+    private void restore(String name, IncrementalLeastSquares model, TrainingSnapshot history) {
+        modelStore.loadLeastSquares(name).ifPresent(state -> {
+            if (model.restore(state, history)) {
+                log.info("Restored {} regression over {} of {} history rows", name, state.getAbsorbed(),
+                        history.size());
+            }
+        });
+    }
+
+    private int save(String name, IncrementalLeastSquares model, int savedSamples) {
+        State state = model.exportState();
+        if (state == null || state.getAbsorbed() == savedSamples) {
+            return savedSamples;
+        }
+        modelStore.saveLeastSquares(name, state);
+        return state.getAbsorbed();
+    }
+
+    public NetworkSnapshot getNeuralNetworkSnapshot() {
+        return neuralNetworkTrainer.getCurrent();
+    }
+
+    public ModelSelection getModelSelection() {
+        return modelSelectionService.getCurrent();
+    }
+
+    public BatchStats getInferenceStats() {
+        return inferenceBatcher.getStats();
+    }
 
     /**
      * *****************************
@@ -40,41 +127,17 @@ public class RegressionModelsService {
      * *****************************
      */
 
-    public double predictLinearRegression(Map<String, Double> features,
-            List<Map<String, Double>> historicalFeatures,
-            List<Double> historicalScores) {
+    public double predictLinearRegression(FeatureVector features, TrainingSnapshot history) {
         // return a deault 0.5 if no historical data size is less than 2
         try {
-            if (historicalFeatures.size() < 2) {
+            if (history.size() < 2) {
                 return 0.5;
             }
 
-            // 1. Prepare training data
-            int numFeatures = features.size();
-            double[][] X = new double[historicalFeatures.size()][numFeatures];
-            double[] y = new double[historicalScores.size()];
-
-            // 2. Loop through historical data and populate X and y
-            for (int i = 0; i < historicalFeatures.size(); i++) {
-                Map<String, Double> historicalFeature = historicalFeatures.get(i);
-                int j = 0;
-                for (String key : features.keySet()) {
-                    X[i][j++] = historicalFeature.getOrDefault(key, 0.0);
-                }
-                y[i] = historicalScores.get(i);
-            }
-
-            // 3. Train the model
-            OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
-            regression.newSampleData(y, X);
-
-            // 4. Obtain predictions
-            double[] coefficients = regression.estimateRegressionParameters();
-            double prediction = coefficients[0];
-
-            int idx = 1;
-            for (String key : features.keySet()) {
-                prediction += coefficients[idx++] * features.get(key);
+            // the model absorbs new history rows and predicts against its cached coefficients
+            double prediction = linearModel.predict(features.values(), history);
+            if (Double.isNaN(prediction)) {
+                return 0.5;
             }
 
             return Math.max(0.0, Math.min(1.0, prediction));
@@ -91,44 +154,16 @@ public class RegressionModelsService {
      * *****************************
      */
 
-    public double predictPolynomialRegression(Map<String, Double> features,
-            List<Map<String, Double>> historicalFeatures,
-            List<Double> historicalScores) {
+    public double predictPolynomialRegression(FeatureVector features, TrainingSnapshot history) {
         try {
-            if (historicalFeatures.size() < 2) {
+            if (history.size() < 2) {
                 return 0.5;
             }
 
-            // add polynomial features e.g (x^2, x1*x2, etc.)
-            Map<String, Double> polyFeatures = addPolynomialFeatures(features);
-            List<Map<String, Double>> polyHistorical = new ArrayList<>();
-            for (Map<String, Double> hist : historicalFeatures) {
-                polyHistorical.add(addPolynomialFeatures(hist));
-            }
-
-            int numFeatures = polyFeatures.size();
-            double[][] X = new double[polyHistorical.size()][numFeatures];
-            double[] y = new double[historicalScores.size()];
-
-            for (int i = 0; i < polyHistorical.size(); i++) {
-                Map<String, Double> hist = polyHistorical.get(i);
-                int j = 0;
-                for (String key : polyFeatures.keySet()) {
-                    X[i][j++] = hist.getOrDefault(key, 0.0);
-                }
-                y[i] = historicalScores.get(i);
-            }
-
-            // predict from the regression model
-            OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
-            regression.newSampleData(y, X);
-
-            double[] coefficients = regression.estimateRegressionParameters();
-            double prediction = coefficients[0];
-
-            int idx = 1;
-            for (String key : polyFeatures.keySet()) {
-                prediction += coefficients[idx++] * polyFeatures.get(key);
+            // add polynomial features e.g (x^2, x1*x2, etc.) -- the model expands each row itself
+            double prediction = polynomialModel.predict(features.values(), history);
+            if (Double.isNaN(prediction)) {
+                return 0.5;
             }
             return Math.max(0.0, Math.min(1.0, prediction));
 
@@ -138,53 +173,57 @@ public class RegressionModelsService {
         }
     }
 
-    private Map<String, Double> addPolynomialFeatures(Map<String, Double> features) {
-        Map<String, Double> polyFeatures = new HashMap<>(features);
+    static double[] addPolynomialFeatures(double[] features) {
+        // linear terms, squared terms, then the precomputed interaction pairs
+        double[] polyFeatures = new double[POLY_FEATURE_COUNT];
 
-        // add squared terms
-        for (Map.Entry<String, Double> entry : features.entrySet()) {
-            String key = entry.getKey() + "_squared";
-            polyFeatures.put(key, entry.getValue() * entry.getValue());
+        int idx = 0;
+        for (double value : features) {
+            polyFeatures[idx++] = value;
+        }
+        for (double value : features) {
+            polyFeatures[idx++] = value * value;
         }
 
         // add interaction terms -- the limits there to prevent gradient explosion
-        // TODO: this needs to be optimised to O(n) at least
-        List<String> keys = new ArrayList<>(features.keySet());
-        for (int i = 0; i < Math.min(5, keys.size()); i++) {
-            for (int j = i + 1; j < Math.min(5, keys.size()); j++) {
-                String key = keys.get(i) + "x" + keys.get(j);
-                polyFeatures.put(key, features.get(keys.get(i)) * features.get(keys.get(j)));
-            }
+        for (int[] pair : POLY_INTERACTIONS) {
+            polyFeatures[idx++] = features[pair[0]] * features[pair[1]];
         }
         return polyFeatures;
     }
 
+    private static int[][] interactionPairs(int interactionFeatures) {
+        int[][] pairs = new int[interactionFeatures * (interactionFeatures - 1) / 2][];
+        int idx = 0;
+        for (int i = 0; i < interactionFeatures; i++) {
+            for (int j = i + 1; j < interactionFeatures; j++) {
+                pairs[idx++] = new int[] { i, j };
+            }
+        }
+        return pairs;
+    }
+
     /**
      * **********************
      * NEURAL NETWORK *
      * **********************
      */
-    public double predictDNN(Map<String, Double> features,
-            List<Map<String, Double>> historicalFeatures,
-            List<Double> historicalScores) {
+    public double predictDNN(FeatureVector features, TrainingSnapshot history) {
 
         try {
-            if (historicalFeatures.size() < 2) {
+            if (history.size() < 2) {
                 return 0.5;
             }
 
-            // Initialize or retrain network
-            if (neuralNetwork == null) {
-                neuralNetwork = createNeuralNetwork();
+            // inference only -- training runs in the background as new history arrives
+            neuralNetworkTrainer.ensureStarted();
+            if (neuralNetworkTrainer.getCurrent() == null) {
+                return 0.5;
+            }
+            double prediction = inferenceBatcher.predict(features.values());
+            if (Double.isNaN(prediction)) {
+                return 0.5;
             }
-
-            // Train network
-            trainNeuralNetwork(historicalFeatures, historicalScores);
-
-            // Predict
-            INDArray input = featuresToINDArray(features);
-            INDArray output = neuralNetwork.output(input);
-            double prediction = output.getDouble(0);
 
             return Math.max(0.0, Math.min(1.0, prediction));
 
@@ -194,119 +233,64 @@ public class RegressionModelsService {
         }
     }
 
-    private MultiLayerNetwork createNeuralNetwork() {
-        MultiLayerConfiguration config = new NeuralNetConfiguration.Builder()
-                .seed(123)
-                .weightInit(WeightInit.XAVIER)
-                .updater(new Adam(NEURAL_LEARNING_RATE))
-                .list()
-                .layer(new DenseLayer.Builder()
-                        .nIn(NEURAL_INPUT_SIZE)
-                        .nOut(NEURAL_HIDDEN_SIZE)
-                        .activation(Activation.RELU)
-                        .build())
-                .layer(new DenseLayer.Builder()
-                        .nIn(NEURAL_HIDDEN_SIZE)
-                        .nOut(16)
-                        .activation(Activation.RELU)
-                        .build())
-                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
-                        .nIn(16)
-                        .nOut(1)
-                        .activation(Activation.SIGMOID)
-                        .build())
-                .build();
-        MultiLayerNetwork neuralNetwork = new MultiLayerNetwork(config);
-        neuralNetwork.init();
-        return neuralNetwork;
-    }
-
-    private void trainNeuralNetwork(List<Map<String, Double>> historicalFeatures, List<Double> historicalScores) {
-        int numSamples = historicalFeatures.size();
-        INDArray input = Nd4j.create(numSamples, NEURAL_INPUT_SIZE);
-        INDArray output = Nd4j.create(numSamples, 1);
-
-        for (int i = 0; i < numSamples; i++) {
-            INDArray row = featuresToINDArray(historicalFeatures.get(i));
-            input.putRow(i, row);
-            output.putScalar(new int[] { i, 0 }, historicalScores.get(i));
-        }
-
-        DataSet dataset = new DataSet(input, output);
-        // train until we hit the final epoch
-        for (int i = 0; i < NEURAL_NUM_EPOCHS; i++) {
-            neuralNetwork.fit(dataset);
-        }
-    }
-
-    private INDArray featuresToINDArray(Map<String, Double> features) {
-        double[] array = new double[NEURAL_INPUT_SIZE];
-        String[] featureNames = {
-                "wordCount", "sentenceCount", "avgWordLength", "lexicalDiversity", "punctuationRatio",
-                "semanticClarity", "contextRelevance", "specificityScore", "ambiguityScore",
-                "hasContext", "hasConstraints", "hasExamples", "structuralComplexity",
-                "hasVerbs", "hasNouns", "hasAdjectives", "completenessScore"
-        };
-
-        for (int i = 0; i < featureNames.length && i < NEURAL_INPUT_SIZE; i++) {
-            array[i] = features.getOrDefault(featureNames[i], 0.0);
-        }
-        return Nd4j.create(array);
-    }
-
     /**
      * **********************
      * ENSEMBLES PREDICTION *
      * **********************
      */
 
-    public double predictEnsemble(Map<String, Double> features,
-            List<Map<String, Double>> historicalFeatures,
-            List<Double> historicalScores) {
-        try {
-            List<Double> predictions = new ArrayList<>();
-            List<Double> weights = new ArrayList<>();
-
-            // Linear Regression Method
-            try {
-                double linearPred = predictLinearRegression(features, historicalFeatures, historicalScores);
-                predictions.add(linearPred);
-                weights.add(0.3);
-
-            } catch (Exception e) {
-                log.error("Error runing linear regression : {}", e.getMessage());
-            }
-
-            // Polynomial Regression Method
-            try {
-                double polyPred = predictPolynomialRegression(features, historicalFeatures, historicalScores);
-                predictions.add(polyPred);
-                weights.add(0.3);
+    public double predictEnsemble(FeatureVector features, TrainingSnapshot history) {
+        return predictEnsemble(features, history, DEFAULT_ENSEMBLE_WEIGHTS);
+    }
 
-            } catch (Exception e) {
-                log.error("Error runing polynomial regression in ensemble : {}", e.getMessage());
+    /**
+     * @param memberWeights weight per method; members weighted zero are not evaluated at all, nor
+     *                      are members the {@link EnsembleMemberTracker} currently skips
+     */
+    public double predictEnsemble(FeatureVector features, TrainingSnapshot history,
+            Map<String, Double> memberWeights) {
+        try {
+            // the members are independent, so evaluate them side by side on the ensemble pool
+            Map<String, CompletableFuture<Double>> running = new LinkedHashMap<>();
+            for (String member : ENSEMBLE_MEMBERS) {
+                if (memberWeights.getOrDefault(member, 0.0) <= 0) {
+                    continue;
+                }
+                // Neural Network Method -- left out until the background trainer has published a network
+                if ("NEURAL".equals(member)) {
+                    neuralNetworkTrainer.ensureStarted();
+                    if (neuralNetworkTrainer.getCurrent() == null) {
+                        continue;
+                    }
+                }
+                if (!ensembleMemberTracker.shouldEvaluate(member)) {
+                    continue;
+                }
+                running.put(member, CompletableFuture.supplyAsync(
+                        () -> predictMember(member, features, history), ensembleExecutor));
             }
 
-            // Neural Network Method
-            try {
-                double neuralPred = predictDNN(features, historicalFeatures, historicalScores);
-                predictions.add(neuralPred);
-                weights.add(0.4);
-
-            } catch (Exception e) {
-                log.error("Error runing dnn in ensemble : {}", e.getMessage());
-            }
+            Map<String, Double> predictions = new LinkedHashMap<>();
+            running.forEach((member, prediction) -> {
+                try {
+                    predictions.put(member, prediction.join());
+                } catch (Exception e) {
+                    log.error("Error runing {} in ensemble : {}", member, e.getMessage());
+                }
+            });
 
             if (predictions.isEmpty()) {
                 return 0.5;
             }
+            ensembleMemberTracker.recordPredictions(features.values(), predictions, memberWeights);
 
             // Weighted average of the predictions
             double weightedSum = 0.0;
             double totalWeight = 0.0;
-            for (int i = 0; i < predictions.size(); i++) {
-                weightedSum += predictions.get(i) * weights.get(i);
-                totalWeight += weights.get(i);
+            for (Map.Entry<String, Double> prediction : predictions.entrySet()) {
+                double weight = memberWeights.get(prediction.getKey());
+                weightedSum += prediction.getValue() * weight;
+                totalWeight += weight;
             }
 
             return weightedSum / totalWeight;
@@ -317,44 +301,49 @@ public class RegressionModelsService {
         }
     }
 
-    public Map<String, Double> calculateMetrics(List<Double> actual, List<Double> predicted) {
-        Map<String, Double> metrics = new HashMap<>();
-
-        if (actual.size() != predicted.size() || actual.isEmpty()) {
-            return metrics;
+    private double predictMember(String member, FeatureVector features, TrainingSnapshot history) {
+        long start = System.nanoTime();
+        double prediction;
+        switch (member) {
+            case "LINEAR":
+                prediction = predictLinearRegression(features, history);
+                break;
+            case "POLYNOMIAL":
+                prediction = predictPolynomialRegression(features, history);
+                break;
+            default:
+                prediction = predictDNN(features, history);
+                break;
         }
+        ensembleMemberTracker.recordLatency(member, System.nanoTime() - start);
+        return prediction;
+    }
 
-        // MSE
-        double mse = 0.0;
-        for (int i = 0; i < actual.size(); i++) {
-            double error = actual.get(i) - predicted.get(i);
-            mse += error * error;
-        }
-        mse /= actual.size();
-        metrics.put("mse", mse);
+    public List<EnsembleMemberStats> getEnsembleMemberStats() {
+        return ensembleMemberTracker.stats();
+    }
 
-        // RMSE
-        metrics.put("rmse", Math.sqrt(mse));
+    /**
+     * **********************
+     * AUTO (MODEL SELECTION) *
+     * **********************
+     */
 
-        // MAE
-        double mae = 0.0;
-        for (int i = 0; i < actual.size(); i++) {
-            mae += Math.abs(actual.get(i) - predicted.get(i));
+    public double predictAuto(FeatureVector features, TrainingSnapshot history) {
+        // the default ensemble until the first cross-validation run has finished
+        ModelSelection selection = modelSelectionService.select(history);
+        if (selection == null) {
+            return predictEnsemble(features, history);
         }
-        mae /= actual.size();
-        metrics.put("mae", mae);
-
-        // R-squared
-        double meanActual = actual.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-        double ssTot = 0.0;
-        double ssRes = 0.0;
-        for (int i = 0; i < actual.size(); i++) {
-            ssTot += Math.pow(actual.get(i) - meanActual, 2);
-            ssRes += Math.pow(actual.get(i) - predicted.get(i), 2);
+        switch (selection.getMethod()) {
+            case "LINEAR":
+                return predictLinearRegression(features, history);
+            case "POLYNOMIAL":
+                return predictPolynomialRegression(features, history);
+            case "NEURAL":
+                return predictDNN(features, history);
+            default:
+                return predictEnsemble(features, history, selection.getEnsembleWeights());
         }
-        double rSquared = ssTot > 0 ? 1 - (ssRes / ssTot) : 0.0;
-        metrics.put("rSquared", rSquared);
-
-        return metrics;
     }
 }
\ No newline at end of file
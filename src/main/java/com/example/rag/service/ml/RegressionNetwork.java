@@ -0,0 +1,36 @@
+package com.example.rag.service.ml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The small feed-forward scoring network behind the DNN method: a row of features in
+ * {@link FeatureSchema} order in, one quality score in [0, 1] out.
+ * {@link NeuralNetworkTrainer} only fits a private {@link #copy()} and publishes it afterwards, so
+ * a published network is only ever used for prediction.
+ */
+public interface RegressionNetwork {
+
+    RegressionNetworkEngine engine();
+
+    /**
+     * Runs {@code epochs} full-batch training steps over the given rows.
+     */
+    void fit(double[][] inputs, double[] targets, int epochs);
+
+    /**
+     * @return one prediction per row; safe to call from several threads
+     */
+    double[] predictBatch(double[][] rows);
+
+    /**
+     * @return an independent copy, including the optimiser state, so training can continue on it
+     */
+    RegressionNetwork copy();
+
+    /**
+     * Writes the parameters and optimiser state in the engine's own format, see
+     * {@link RegressionNetworkEngine#read}.
+     */
+    void write(OutputStream out) throws IOException;
+}
@@ -0,0 +1,62 @@
+package com.example.rag.service.ml;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Implementations of {@link RegressionNetwork}, chosen with {@code ml.neural.engine}.
+ * Both build the same 17-32-16-1 network (ReLU, ReLU, sigmoid; MSE loss; Adam), so switching only
+ * changes speed. {@code JAVA} never loads ND4J.
+ */
+public enum RegressionNetworkEngine {
+
+    // DL4J/ND4J
+    DL4J("dnn.zip") {
+        @Override
+        public RegressionNetwork create() {
+            return Dl4jRegressionNetwork.create();
+        }
+
+        @Override
+        public RegressionNetwork read(InputStream in) throws IOException {
+            return Dl4jRegressionNetwork.read(in);
+        }
+    },
+    // flat double[] parameters, preallocated buffers and hand-written backprop
+    JAVA("dnn.bin") {
+        @Override
+        public RegressionNetwork create() {
+            return MlpRegressionNetwork.create(LAYER_SIZES, LEARNING_RATE, SEED);
+        }
+
+        @Override
+        public RegressionNetwork read(InputStream in) throws IOException {
+            return MlpRegressionNetwork.read(in);
+        }
+    };
+
+    // input, hidden and output layer sizes
+    static final int[] LAYER_SIZES = { FeatureSchema.SIZE, 32, 16, 1 };
+    static final double LEARNING_RATE = 0.001;
+    static final long SEED = 123;
+
+    private final String fileName;
+
+    RegressionNetworkEngine(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return the file {@link ModelStore} keeps this engine's networks in
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return a freshly initialised, untrained network
+     */
+    public abstract RegressionNetwork create();
+
+    public abstract RegressionNetwork read(InputStream in) throws IOException;
+}
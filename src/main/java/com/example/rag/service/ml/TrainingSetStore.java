@@ -0,0 +1,126 @@
+package com.example.rag.service.ml;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.rag.model.ml.PromptRefinement;
+import com.example.rag.repository.ml.PromptRefinementRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory copy of the refinement history used to train the regression models.
+ * The history is loaded once at startup and then only appended to as refinements commit, and is
+ * kept column-wise, in {@link FeatureSchema} order, in primitive arrays so models can read it without
+ * boxing or rehydrating entities.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TrainingSetStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final PromptRefinementRepository refinementRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private double[][] featureColumns = new double[FeatureSchema.SIZE][INITIAL_CAPACITY];
+    private double[] qualityScores = new double[INITIAL_CAPACITY];
+    private double[] predictedScores = new double[INITIAL_CAPACITY];
+    private String[] methods = new String[INITIAL_CAPACITY];
+    private int[] iterationNumbers = new int[INITIAL_CAPACITY];
+    private String[] sessionIds = new String[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private volatile TrainingSnapshot snapshot = TrainingSnapshot.EMPTY;
+
+    @PostConstruct
+    public void load() {
+        List<PromptRefinement> history = refinementRepository.findAllWithFeatures();
+        synchronized (this) {
+            history.forEach(this::appendRow);
+            publish();
+        }
+        log.info("Loaded {} refinement rows into the training set", history.size());
+    }
+
+    public TrainingSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds the refinement once the surrounding transaction commits, or immediately outside one,
+     * so rolled-back rows never reach the models.
+     */
+    public void appendAfterCommit(PromptRefinement refinement) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(refinement);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                append(refinement);
+            }
+        });
+    }
+
+    public void append(PromptRefinement refinement) {
+        TrainingSnapshot published;
+        synchronized (this) {
+            appendRow(refinement);
+            published = publish();
+        }
+        eventPublisher.publishEvent(new TrainingSetUpdatedEvent(published));
+    }
+
+    // must hold the monitor
+    private void appendRow(PromptRefinement refinement) {
+        if (size == qualityScores.length) {
+            grow();
+        }
+        Map<String, Double> features = refinement.getExtractedFeatures();
+        for (int column = 0; column < featureColumns.length; column++) {
+            Double value = features != null ? features.get(FeatureSchema.at(column).getFeatureName()) : null;
+            featureColumns[column][size] = value != null ? value : 0.0;
+        }
+        qualityScores[size] = refinement.getQualityScore();
+        predictedScores[size] = refinement.getPredictedScore() != null ? refinement.getPredictedScore() : Double.NaN;
+        methods[size] = refinement.getRegressionMethod();
+        iterationNumbers[size] = refinement.getIterationNumber();
+        sessionIds[size] = refinement.getSessionId();
+        ids[size] = refinement.getId() != null ? refinement.getId() : 0L;
+        size++;
+    }
+
+    // growing swaps in new arrays; existing snapshots keep reading the old ones
+    private void grow() {
+        int capacity = qualityScores.length * 2;
+        double[][] columns = new double[featureColumns.length][];
+        for (int column = 0; column < featureColumns.length; column++) {
+            columns[column] = Arrays.copyOf(featureColumns[column], capacity);
+        }
+        featureColumns = columns;
+        qualityScores = Arrays.copyOf(qualityScores, capacity);
+        predictedScores = Arrays.copyOf(predictedScores, capacity);
+        methods = Arrays.copyOf(methods, capacity);
+        iterationNumbers = Arrays.copyOf(iterationNumbers, capacity);
+        sessionIds = Arrays.copyOf(sessionIds, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+    }
+
+    private TrainingSnapshot publish() {
+        snapshot = new TrainingSnapshot(size, size, featureColumns, qualityScores, predictedScores, methods,
+                iterationNumbers, sessionIds, ids);
+        return snapshot;
+    }
+}
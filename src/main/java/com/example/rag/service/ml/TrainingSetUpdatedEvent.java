@@ -0,0 +1,13 @@
+package com.example.rag.service.ml;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by {@link TrainingSetStore} whenever new refinement rows become visible to the models.
+ */
+@Getter
+@AllArgsConstructor
+public class TrainingSetUpdatedEvent {
+    private final TrainingSnapshot snapshot;
+}
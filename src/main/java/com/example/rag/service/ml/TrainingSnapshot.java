@@ -0,0 +1,148 @@
+package com.example.rag.service.ml;
+
+/**
+ * Immutable, versioned view of the refinement history held by {@link TrainingSetStore}.
+ * Columns are shared with the store, which only ever writes past {@link #size()}, so a snapshot
+ * stays valid while new rows are appended.
+ */
+public final class TrainingSnapshot {
+    static final TrainingSnapshot EMPTY = new TrainingSnapshot(0, 0,
+            new double[FeatureSchema.SIZE][0], new double[0], new double[0],
+            new String[0], new int[0], new String[0], new long[0]);
+
+    private final long version;
+    private final int size;
+    private final double[][] featureColumns;
+    private final double[] qualityScores;
+    private final double[] predictedScores;
+    private final String[] methods;
+    private final int[] iterationNumbers;
+    private final String[] sessionIds;
+    private final long[] ids;
+
+    TrainingSnapshot(long version, int size, double[][] featureColumns, double[] qualityScores,
+            double[] predictedScores, String[] methods, int[] iterationNumbers,
+            String[] sessionIds, long[] ids) {
+        this.version = version;
+        this.size = size;
+        this.featureColumns = featureColumns;
+        this.qualityScores = qualityScores;
+        this.predictedScores = predictedScores;
+        this.methods = methods;
+        this.iterationNumbers = iterationNumbers;
+        this.sessionIds = sessionIds;
+        this.ids = ids;
+    }
+
+    /**
+     * Increases with every appended row, so equal versions mean identical contents.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int featureCount() {
+        return featureColumns.length;
+    }
+
+    public double feature(int column, int row) {
+        checkRow(row);
+        return featureColumns[column][row];
+    }
+
+    /**
+     * Copies one row of features, in {@link FeatureSchema} order, into {@code into}.
+     */
+    public double[] row(int row, double[] into) {
+        checkRow(row);
+        for (int column = 0; column < featureColumns.length; column++) {
+            into[column] = featureColumns[column][row];
+        }
+        return into;
+    }
+
+    public double qualityScore(int row) {
+        checkRow(row);
+        return qualityScores[row];
+    }
+
+    /**
+     * @return the score the model predicted for this row, NaN when none was recorded
+     */
+    public double predictedScore(int row) {
+        checkRow(row);
+        return predictedScores[row];
+    }
+
+    public String method(int row) {
+        checkRow(row);
+        return methods[row];
+    }
+
+    public int iterationNumber(int row) {
+        checkRow(row);
+        return iterationNumbers[row];
+    }
+
+    public String sessionId(int row) {
+        checkRow(row);
+        return sessionIds[row];
+    }
+
+    /**
+     * @return the refinement's database id, 0 for a row that was never saved
+     */
+    public long id(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    /**
+     * Order-independent identity of a row, from its id and quality score; summed over rows it tells
+     * whether saved model state was built from the same rows, whatever order they were added in.
+     */
+    public long rowHash(int row) {
+        checkRow(row);
+        // splitmix64 finaliser
+        long z = ids[row] * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(qualityScores[row]);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return the sum of {@link #rowHash} over the first {@code rows} rows
+     */
+    public long checksum(int rows) {
+        long checksum = 0;
+        for (int row = 0; row < rows; row++) {
+            checksum += rowHash(row);
+        }
+        return checksum;
+    }
+
+    /**
+     * @return the largest id among the first {@code rows} rows
+     */
+    public long maxId(int rows) {
+        long max = 0;
+        for (int row = 0; row < rows; row++) {
+            max = Math.max(max, id(row));
+        }
+        return max;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+    }
+}
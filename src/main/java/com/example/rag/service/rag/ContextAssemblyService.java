@@ -0,0 +1,173 @@
+package com.example.rag.service.rag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import com.example.rag.config.RagConfig;
+import com.example.rag.model.rag.DocumentChunk;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Packs ranked chunks into the prompt context under a token budget.
+ * Chunks are emitted in (document, chunkIndex) order so adjacent chunks of the
+ * same document can have their shared overlap removed before counting tokens.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContextAssemblyService {
+    private static final String SEPARATOR = "\n\n";
+    // shorter suffix/prefix matches are treated as coincidence, not chunk overlap
+    private static final int MIN_OVERLAP_CHARS = 8;
+
+    private static final Comparator<DocumentChunk> CHUNK_ORDER = Comparator
+            .comparing(ContextAssemblyService::documentIdOf, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(DocumentChunk::getChunkIndex, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final RagConfig config;
+
+    /**
+     * @param rankedChunks chunks ordered from most to least relevant
+     */
+    public AssembledContext assemble(List<DocumentChunk> rankedChunks) {
+        int budget = config.getContext().getTokenBudget();
+        List<DocumentChunk> selected = new ArrayList<>();
+        Rendered best = new Rendered("", 0, 0);
+
+        // greedily take chunks by relevance while the rendered context still fits
+        for (DocumentChunk chunk : rankedChunks) {
+            List<DocumentChunk> candidate = new ArrayList<>(selected);
+            candidate.add(chunk);
+            candidate.sort(CHUNK_ORDER);
+
+            Rendered rendered = render(candidate);
+            if (rendered.tokens <= budget) {
+                selected = candidate;
+                best = rendered;
+            }
+        }
+
+        // never send an empty context when something was retrieved - cut the top hit down instead
+        if (selected.isEmpty() && !rankedChunks.isEmpty()) {
+            DocumentChunk top = rankedChunks.get(0);
+            String truncated = truncateToBudget(top.getContent(), budget);
+            selected = List.of(top);
+            best = new Rendered(truncated, estimateTokens(truncated), 0);
+        }
+
+        log.debug("Assembled context: {} of {} chunks, {} tokens ({} overlap tokens removed)",
+                selected.size(), rankedChunks.size(), best.tokens, best.trimmedTokens);
+        return new AssembledContext(best.text, selected, best.tokens, best.trimmedTokens);
+    }
+
+    private Rendered render(List<DocumentChunk> ordered) {
+        StringBuilder text = new StringBuilder();
+        int tokens = 0;
+        int trimmedTokens = 0;
+        DocumentChunk previous = null;
+
+        for (DocumentChunk chunk : ordered) {
+            String content = chunk.getContent();
+            if (previous != null && isAdjacent(previous, chunk)) {
+                int overlap = overlapLength(previous.getContent(), content, config.getContext().getMaxOverlapChars());
+                if (overlap > 0) {
+                    trimmedTokens += estimateTokens(content.substring(0, overlap));
+                    content = content.substring(overlap).stripLeading();
+                }
+            }
+            if (!content.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append(SEPARATOR);
+                }
+                text.append(content);
+                tokens += estimateTokens(content);
+            }
+            previous = chunk;
+        }
+        return new Rendered(text.toString(), tokens, trimmedTokens);
+    }
+
+    private static boolean isAdjacent(DocumentChunk previous, DocumentChunk next) {
+        Long previousDoc = documentIdOf(previous);
+        return previousDoc != null && previousDoc.equals(documentIdOf(next))
+                && previous.getChunkIndex() != null && next.getChunkIndex() != null
+                && next.getChunkIndex() == previous.getChunkIndex() + 1;
+    }
+
+    private static Long documentIdOf(DocumentChunk chunk) {
+        // getId() on the lazy proxy does not initialise it
+        return chunk.getDocument() != null ? chunk.getDocument().getId() : null;
+    }
+
+    /**
+     * Length of the longest suffix of {@code previous} that is also a prefix of {@code next}.
+     */
+    static int overlapLength(String previous, String next, int maxOverlap) {
+        int max = Math.min(maxOverlap, Math.min(previous.length(), next.length()));
+        for (int k = max; k >= MIN_OVERLAP_CHARS; k--) {
+            if (previous.regionMatches(previous.length() - k, next, 0, k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Cheap tokenizer-free estimate: roughly one token per four characters of a
+     * word and one per punctuation character, close to BPE counts for English text.
+     */
+    public static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            tokens += (run + 3) / 4;
+            run = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (run + 3) / 4;
+    }
+
+    static String truncateToBudget(String text, int budget) {
+        int end = 0;
+        int tokens = 0;
+        for (String word : text.split("(?<=\\s)")) {
+            int wordTokens = estimateTokens(word);
+            if (tokens + wordTokens > budget) {
+                break;
+            }
+            tokens += wordTokens;
+            end += word.length();
+        }
+        return text.substring(0, end).strip();
+    }
+
+    @AllArgsConstructor
+    private static class Rendered {
+        private final String text;
+        private final int tokens;
+        private final int trimmedTokens;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class AssembledContext {
+        private String text;
+        private List<DocumentChunk> chunks;
+        private int tokenCount;
+        private int trimmedTokens;
+    }
+}
@@ -46,6 +46,8 @@ public class DocumentProcessingService {
             String text = extractTextFromPDF(file.getInputStream());
             List<String> chunks = chunkingService.chunkText(text, 500, 50);
 
+            // one vector buffer for the whole document, refilled by every embedding call
+            float[] embedding = null;
             for (int i = 0; i < chunks.size(); i++) {
                 DocumentChunk chunk = new DocumentChunk();
                 chunk.setDocument(document);
@@ -54,8 +56,8 @@ public class DocumentProcessingService {
                 chunk.setStartPosition(i * 450);
                 chunk.setEndPosition((i + 1) * 450);
 
-                String embedding = ollamaService.generateEmbedding((chunks.get(i)));
-                chunk.setEmbedding(embedding);
+                embedding = ollamaService.generateEmbedding(chunks.get(i), embedding);
+                chunk.setEmbedding(EmbeddingCodec.encode(embedding));
                 
                 chunkRepository.save(chunk);
             }
@@ -0,0 +1,80 @@
+package com.example.rag.service.rag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Embedding vectors as they travel between Ollama, the database and the retriever.
+ * Ollama answers {"embedding":[...]} which is decoded with the streaming parser straight into
+ * a float[]; vectors are stored in {@code DocumentChunk.embedding} as base64 little-endian float32.
+ */
+public final class EmbeddingCodec {
+    private static final JsonFactory JSON = new JsonFactory();
+    // nomic-embed-text, used when the caller has no buffer yet
+    private static final int DEFAULT_DIMENSIONS = 768;
+
+    private EmbeddingCodec() {
+    }
+
+    /**
+     * Reads the "embedding" array of an Ollama response into {@code reuse} when it has the right
+     * size. The returned array holds exactly the vector; pass it back in on the next call to
+     * avoid allocating once the dimension is known.
+     */
+    public static float[] readEmbedding(JsonParser parser, float[] reuse) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Embedding response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                return readFloats(parser, reuse != null ? reuse : new float[DEFAULT_DIMENSIONS]);
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("Embedding response missing 'embedding' field");
+    }
+
+    private static float[] readFloats(JsonParser parser, float[] buffer) throws IOException {
+        int length = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(16, length * 2));
+            }
+            buffer[length++] = parser.getFloatValue();
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    public static String encode(float[] vector) {
+        ByteBuffer bytes = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(bytes.array());
+    }
+
+    /**
+     * Decodes a stored embedding; rows written before the binary encoding hold the raw Ollama JSON.
+     */
+    public static float[] decode(String stored) throws IOException {
+        if (stored == null || stored.isEmpty()) {
+            return new float[0];
+        }
+        if (stored.charAt(0) == '{') {
+            try (JsonParser parser = JSON.createParser(stored)) {
+                return readEmbedding(parser, null);
+            }
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(stored)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[bytes.remaining() / Float.BYTES];
+        bytes.asFloatBuffer().get(vector);
+        return vector;
+    }
+}
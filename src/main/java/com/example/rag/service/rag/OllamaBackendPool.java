@@ -0,0 +1,414 @@
+package com.example.rag.service.rag;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import com.example.rag.config.OllamaConfig;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Routes Ollama calls across the configured backends.
+ * Each call goes to the healthy backend with the fewest requests in flight; backends are
+ * probed in the background and a backend that fails a call is avoided until it passes a probe.
+ * Embedding calls can optionally be hedged: if the first backend has not answered after the
+ * observed p95 latency, the same request is sent to a second backend and the first answer wins.
+ */
+@Slf4j
+public class OllamaBackendPool implements AutoCloseable {
+    private static final int LATENCY_WINDOW = 256;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 2000;
+
+    private final OllamaConfig config;
+    private final OkHttpClient client;
+    private final List<Backend> backends;
+    private final LatencyWindow hedgedLatency = new LatencyWindow(LATENCY_WINDOW);
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    public OllamaBackendPool(OllamaConfig config, OkHttpClient client) {
+        this.config = config;
+        this.client = client;
+
+        List<String> urls = config.getBackends() == null || config.getBackends().isEmpty()
+                ? List.of(config.getBaseUrl())
+                : config.getBackends();
+        this.backends = urls.stream()
+                .map(url -> new Backend(url.endsWith("/") ? url.substring(0, url.length() - 1) : url))
+                .collect(Collectors.toList());
+
+        // a single backend is always used regardless of health, so only probe real pools
+        if (backends.size() > 1 && config.getHealthCheckInterval() > 0) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ollama-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, 0,
+                    config.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            healthChecker = null;
+        }
+        log.info("Ollama backend pool: {}", urls);
+    }
+
+    public <T> T execute(String path, RequestBody body, ResponseHandler<T> handler) throws IOException {
+        return execute(path, body, null, handler);
+    }
+
+    /**
+     * @param affinityKey calls with the same key go to the same healthy backend (rendezvous hashing),
+     *                    so a conversation keeps hitting the server holding its cached prompt
+     *                    prefix; null for least-loaded routing
+     */
+    public <T> T execute(String path, RequestBody body, String affinityKey, ResponseHandler<T> handler)
+            throws IOException {
+        Backend backend = acquire(null, affinityKey);
+        try {
+            return call(backend, path, body, handler);
+        } catch (BackendUnavailableException e) {
+            // connection-level failure: retry once on another backend if there is one
+            Backend fallback = acquire(backend, affinityKey);
+            if (fallback == null) {
+                throw e.getCause();
+            }
+            log.warn("Ollama backend {} failed ({}), retrying on {}", backend.url, e.getCause().getMessage(),
+                    fallback.url);
+            try {
+                return call(fallback, path, body, handler);
+            } catch (BackendUnavailableException retryFailure) {
+                throw retryFailure.getCause();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #execute} but, when hedging is enabled, duplicates the request onto a second
+     * backend once the first one has been slower than the recent p95. Attempts may run
+     * concurrently, so each gets its own handler from {@code handlers} (0 = primary, 1 = hedge).
+     */
+    public <T> T executeHedged(String path, RequestBody body, IntFunction<ResponseHandler<T>> handlers)
+            throws IOException {
+        if (!config.isHedgeEmbeddings() || backends.size() < 2) {
+            long start = System.nanoTime();
+            T result = execute(path, body, handlers.apply(0));
+            hedgedLatency.record(System.nanoTime() - start);
+            return result;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        Backend primary = acquire(null);
+        Call primaryCall = enqueue(primary, path, body, handlers.apply(0), result, pending);
+        Call hedgeCall = null;
+
+        try {
+            long hedgeDelay = hedgeDelayMillis();
+            if (hedgeDelay >= 0) {
+                try {
+                    return result.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException slowPrimary) {
+                    Backend secondary = acquire(primary);
+                    if (secondary != null) {
+                        log.debug("Hedging {} from {} to {}", path, primary.url, secondary.url);
+                        pending.incrementAndGet();
+                        hedgeCall = enqueue(secondary, path, body, handlers.apply(1), result, pending);
+                    }
+                }
+            }
+            return result.get(config.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for Ollama " + path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for Ollama " + path, e);
+        } finally {
+            // whichever attempt lost is no longer needed
+            primaryCall.cancel();
+            if (hedgeCall != null) {
+                hedgeCall.cancel();
+            }
+        }
+    }
+
+    private <T> Call enqueue(Backend backend, String path, RequestBody body, ResponseHandler<T> handler,
+            CompletableFuture<T> result, AtomicInteger pending) {
+        long start = System.nanoTime();
+        Call call = client.newCall(request(backend, path, body));
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    T value = handler.handle(response);
+                    backend.markHealthy();
+                    if (result.complete(value)) {
+                        hedgedLatency.record(System.nanoTime() - start);
+                    }
+                } catch (Exception e) {
+                    failAttempt(e);
+                } finally {
+                    backend.release();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled()) {
+                    backend.markFailed(e);
+                }
+                backend.release();
+                failAttempt(e);
+            }
+
+            private void failAttempt(Exception e) {
+                // only surface an error once every attempt has failed
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return call;
+    }
+
+    private <T> T call(Backend backend, String path, RequestBody body, ResponseHandler<T> handler)
+            throws IOException {
+        Response response;
+        try {
+            response = client.newCall(request(backend, path, body)).execute();
+        } catch (IOException e) {
+            backend.markFailed(e);
+            backend.release();
+            throw new BackendUnavailableException(e);
+        }
+        try (response) {
+            T result = handler.handle(response);
+            backend.markHealthy();
+            return result;
+        } finally {
+            backend.release();
+        }
+    }
+
+    private Request request(Backend backend, String path, RequestBody body) {
+        return new Request.Builder()
+                .url(backend.url + path)
+                .post(body)
+                .build();
+    }
+
+    private Backend acquire(Backend exclude) {
+        return acquire(exclude, null);
+    }
+
+    /**
+     * Picks the healthy backend with the fewest outstanding requests and reserves a slot on it.
+     * Ties are broken round-robin. With an affinity key, the candidate ranking highest for that
+     * key is picked instead, whatever its load. Returns null only when {@code exclude} is the sole
+     * candidate.
+     */
+    private Backend acquire(Backend exclude, String affinityKey) {
+        List<Backend> candidates = backends.stream()
+                .filter(b -> b != exclude && b.healthy)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            // every probe failed - still try, the health state may be stale
+            candidates = backends.stream().filter(b -> b != exclude).collect(Collectors.toList());
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Backend best = null;
+        if (affinityKey != null) {
+            // losing a backend only moves the keys that ranked it first
+            long bestRank = Long.MIN_VALUE;
+            for (Backend candidate : candidates) {
+                long rank = rendezvousRank(affinityKey, candidate.url);
+                if (best == null || rank > bestRank) {
+                    best = candidate;
+                    bestRank = rank;
+                }
+            }
+        } else {
+            int offset = Math.floorMod(roundRobin.getAndIncrement(), candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                Backend candidate = candidates.get((offset + i) % candidates.size());
+                if (best == null || candidate.inFlight.get() < best.inFlight.get()) {
+                    best = candidate;
+                }
+            }
+        }
+        best.inFlight.incrementAndGet();
+        best.totalRequests.incrementAndGet();
+        return best;
+    }
+
+    private static long rendezvousRank(String key, String url) {
+        // 64-bit mix of the two hashes, so ranks of different urls are independent
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L ^ url.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * @return how long to wait before hedging, or -1 until enough latencies have been observed
+     */
+    private long hedgeDelayMillis() {
+        long p95 = hedgedLatency.percentileMillis(0.95, MIN_LATENCY_SAMPLES);
+        return p95 < 0 ? -1 : Math.max(config.getHedgeMinDelay(), p95);
+    }
+
+    private void checkHealth() {
+        OkHttpClient probeClient = client.newBuilder()
+                .callTimeout(HEALTH_CHECK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        for (Backend backend : backends) {
+            Request probe = new Request.Builder().url(backend.url + "/api/tags").get().build();
+            try (Response response = probeClient.newCall(probe).execute()) {
+                if (response.isSuccessful()) {
+                    backend.markHealthy();
+                } else {
+                    backend.markFailed(new IOException("health check returned " + response.code()));
+                }
+            } catch (IOException e) {
+                backend.markFailed(e);
+            }
+        }
+    }
+
+    /**
+     * @return the backends currently taking calls, at least 1 since calls fall back to an
+     *         unhealthy backend when none is healthy
+     */
+    public int healthyCount() {
+        return (int) Math.max(1, backends.stream().filter(b -> b.healthy).count());
+    }
+
+    public List<BackendStatus> getStatus() {
+        return backends.stream()
+                .map(b -> new BackendStatus(b.url, b.healthy, b.inFlight.get(), b.totalRequests.get(),
+                        b.failures.get()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    private static class Backend {
+        private final String url;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong totalRequests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile boolean healthy = true;
+
+        Backend(String url) {
+            this.url = url;
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        void markHealthy() {
+            if (!healthy) {
+                log.info("Ollama backend {} is healthy again", url);
+            }
+            healthy = true;
+        }
+
+        void markFailed(IOException e) {
+            failures.incrementAndGet();
+            if (healthy) {
+                log.warn("Ollama backend {} marked unhealthy: {}", url, e.getMessage());
+            }
+            healthy = false;
+        }
+    }
+
+    /**
+     * Fixed-size ring of recent latencies used to derive the hedging delay.
+     */
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int count;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * @return the percentile in milliseconds, or -1 while there are fewer than minSamples
+         */
+        synchronized long percentileMillis(double percentile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+            return TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+        }
+    }
+
+    private static class BackendUnavailableException extends IOException {
+        BackendUnavailableException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class BackendStatus {
+        private String url;
+        private boolean healthy;
+        private int inFlight;
+        private long totalRequests;
+        private long failures;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.rag.service.rag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One message of an Ollama {@code /api/chat} request, serialised as {@code {"role", "content"}}.
+ */
+@Getter
+@AllArgsConstructor
+public class OllamaChatMessage {
+    private final String role;
+    private final String content;
+
+    public static OllamaChatMessage system(String content) {
+        return new OllamaChatMessage("system", content);
+    }
+
+    public static OllamaChatMessage user(String content) {
+        return new OllamaChatMessage("user", content);
+    }
+
+    public static OllamaChatMessage assistant(String content) {
+        return new OllamaChatMessage("assistant", content);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.rag.service.rag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message history of one chat under a fixed system message, for {@link OllamaService#chat}.
+ * Each call resends the history unchanged with the new turn appended, so the server can reuse the
+ * cached prefix and only prefill the new tokens. Calls with the same {@link #getKey()} go to the
+ * same backend. Calls without a key go to the least loaded one. Once the history would outgrow
+ * {@code maxChars}, it restarts from the system message. That costs a single cache miss, where a
+ * sliding window would miss on every call.
+ */
+public class OllamaConversation {
+
+    private final String key;
+    private final OllamaChatMessage system;
+    private final int maxChars;
+
+    // guarded by this
+    private final List<OllamaChatMessage> messages = new ArrayList<>();
+    private int chars;
+
+    public OllamaConversation(String key, String systemMessage, int maxChars) {
+        this.key = key;
+        this.system = OllamaChatMessage.system(systemMessage);
+        this.maxChars = maxChars;
+        messages.add(system);
+        chars = systemMessage.length();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the messages to send for a new user turn; the turn is only kept once answered
+     */
+    synchronized List<OllamaChatMessage> ask(String userMessage) {
+        if (messages.size() > 1 && chars + userMessage.length() > maxChars) {
+            messages.subList(1, messages.size()).clear();
+            chars = system.getContent().length();
+        }
+        List<OllamaChatMessage> request = new ArrayList<>(messages);
+        request.add(OllamaChatMessage.user(userMessage));
+        return request;
+    }
+
+    synchronized void answered(String userMessage, String reply) {
+        messages.add(OllamaChatMessage.user(userMessage));
+        messages.add(OllamaChatMessage.assistant(reply));
+        chars += userMessage.length() + reply.length();
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+}
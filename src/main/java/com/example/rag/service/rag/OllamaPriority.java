@@ -0,0 +1,13 @@
+package com.example.rag.service.rag;
+
+/**
+ * Priority classes for work sent to Ollama, see {@link OllamaScheduler}.
+ */
+public enum OllamaPriority {
+    // a user is waiting on the answer (chat)
+    INTERACTIVE,
+    // prompt refinement loops
+    REFINEMENT,
+    // bulk document embeddings
+    INGESTION
+}
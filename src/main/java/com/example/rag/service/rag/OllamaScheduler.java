@@ -0,0 +1,196 @@
+package com.example.rag.service.rag;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+import com.example.rag.config.OllamaConfig;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control in front of Ollama.
+ * Callers block until a slot is granted: a slot is free when both the global cap and the
+ * caller's class cap allow it, and among queued classes the next slot goes to the one with the
+ * lowest virtual time (stride scheduling), so classes are served in proportion to their weights.
+ * Class caps are per backend, so they grow with the number of healthy backends. So does the
+ * global cap, unless {@code maxConcurrent} fixes it.
+ */
+@Slf4j
+public class OllamaScheduler {
+    private static final double STRIDE = 1.0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<OllamaPriority, PriorityQueueState> classes = new EnumMap<>(OllamaPriority.class);
+    private final IntSupplier healthyBackends;
+    // 0 derives the global cap from maxConcurrentPerBackend
+    private final int maxConcurrent;
+    private final int maxConcurrentPerBackend;
+    private int running;
+    private double virtualTime;
+
+    @FunctionalInterface
+    public interface OllamaCall<T> {
+        T call() throws IOException;
+    }
+
+    public OllamaScheduler(OllamaConfig.Scheduler config) {
+        this(config, () -> 1);
+    }
+
+    /**
+     * @param healthyBackends how many backends currently take calls, which the per-backend caps
+     *                        are multiplied by
+     */
+    public OllamaScheduler(OllamaConfig.Scheduler config, IntSupplier healthyBackends) {
+        this.healthyBackends = healthyBackends;
+        this.maxConcurrent = config.getMaxConcurrent();
+        this.maxConcurrentPerBackend = Math.max(1, config.getMaxConcurrentPerBackend());
+        classes.put(OllamaPriority.INTERACTIVE, new PriorityQueueState(config.getInteractive()));
+        classes.put(OllamaPriority.REFINEMENT, new PriorityQueueState(config.getRefinement()));
+        classes.put(OllamaPriority.INGESTION, new PriorityQueueState(config.getIngestion()));
+    }
+
+    public <T> T execute(OllamaPriority priority, OllamaCall<T> call) throws IOException {
+        PriorityQueueState state = classes.get(priority);
+        acquire(state);
+        try {
+            return call.call();
+        } finally {
+            release(state);
+        }
+    }
+
+    private void acquire(PriorityQueueState state) throws IOException {
+        Ticket ticket = new Ticket(lock.newCondition());
+        lock.lock();
+        try {
+            if (state.queue.isEmpty()) {
+                // an idle class must not bank credit while it had nothing queued
+                state.pass = Math.max(state.pass, virtualTime);
+            }
+            state.queue.add(ticket);
+            dispatch();
+            while (!ticket.granted) {
+                ticket.condition.await();
+            }
+        } catch (InterruptedException e) {
+            if (ticket.granted) {
+                // granted concurrently with the interrupt - hand the slot back
+                release(state);
+            } else {
+                state.queue.remove(ticket);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an Ollama slot", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(PriorityQueueState state) {
+        lock.lock();
+        try {
+            state.running--;
+            running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must hold lock
+    private void dispatch() {
+        // a backend coming back only raises the caps at the next acquire or release
+        int backends = Math.max(1, healthyBackends.getAsInt());
+        int cap = maxConcurrent > 0 ? maxConcurrent : maxConcurrentPerBackend * backends;
+        while (running < cap) {
+            PriorityQueueState next = null;
+            for (PriorityQueueState candidate : classes.values()) {
+                if (!candidate.queue.isEmpty()
+                        && candidate.running < candidate.maxConcurrentPerBackend * backends
+                        && (next == null || candidate.pass < next.pass)) {
+                    next = candidate;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            Ticket ticket = next.queue.poll();
+            virtualTime = next.pass;
+            next.pass += STRIDE / next.weight;
+            next.running++;
+            running++;
+
+            long waitNanos = System.nanoTime() - ticket.enqueuedAt;
+            next.dispatched++;
+            next.totalWaitNanos += waitNanos;
+            next.maxWaitNanos = Math.max(next.maxWaitNanos, waitNanos);
+
+            ticket.granted = true;
+            ticket.condition.signal();
+        }
+    }
+
+    public Map<OllamaPriority, ClassStats> getStats() {
+        lock.lock();
+        try {
+            Map<OllamaPriority, ClassStats> stats = new EnumMap<>(OllamaPriority.class);
+            classes.forEach((priority, state) -> stats.put(priority, new ClassStats(
+                    state.queue.size(),
+                    state.running,
+                    state.dispatched,
+                    state.dispatched > 0
+                            ? TimeUnit.NANOSECONDS.toMicros(state.totalWaitNanos / state.dispatched) / 1000.0
+                            : 0.0,
+                    TimeUnit.NANOSECONDS.toMicros(state.maxWaitNanos) / 1000.0)));
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class PriorityQueueState {
+        private final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        private final int maxConcurrentPerBackend;
+        private final int weight;
+        private int running;
+        private double pass;
+        private long dispatched;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        PriorityQueueState(OllamaConfig.PriorityClass config) {
+            this.maxConcurrentPerBackend = Math.max(1, config.getMaxConcurrentPerBackend());
+            this.weight = Math.max(1, config.getWeight());
+        }
+    }
+
+    private static class Ticket {
+        private final Condition condition;
+        private final long enqueuedAt = System.nanoTime();
+        private boolean granted;
+
+        Ticket(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ClassStats {
+        private int queued;
+        private int running;
+        private long dispatched;
+        private double averageWaitMs;
+        private double maxWaitMs;
+    }
+}
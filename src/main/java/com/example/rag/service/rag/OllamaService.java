@@ -1,22 +1,28 @@
 package com.example.rag.service.rag;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.stereotype.Service;
 
 import com.example.rag.config.OllamaConfig;
+import com.example.rag.service.rag.OllamaBackendPool.BackendStatus;
+import com.example.rag.service.rag.OllamaScheduler.ClassStats;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 // import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import okhttp3.RequestBody;
-import okhttp3.Response;
 
 @Service
 // @RequiredArgsConstructor
@@ -24,40 +30,73 @@ import okhttp3.Response;
 public class OllamaService {
     private final OllamaConfig config;
     private final ObjectMapper objectMapper;
-    private final OkHttpClient client;
+    private final OllamaBackendPool backendPool;
+    private final OllamaScheduler scheduler;
 
     public OllamaService(OllamaConfig config, ObjectMapper objectMapper) {
         this.config = config;
         this.objectMapper = objectMapper;
-        this.client = new OkHttpClient.Builder()
+
+        // hedged calls run asynchronously, so don't let the default 5-per-host limit queue them
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(dispatcher.getMaxRequests());
+
+        OkHttpClient client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
             .connectTimeout(config.getTimeout(), TimeUnit.MILLISECONDS)
             .readTimeout(config.getTimeout(), TimeUnit.MILLISECONDS)
             .writeTimeout(config.getTimeout(), TimeUnit.MILLISECONDS)
             .build();
+        this.backendPool = new OllamaBackendPool(config, client);
+        this.scheduler = new OllamaScheduler(config.getScheduler(), backendPool::healthyCount);
     }
 
-    public String generateEmbedding(String text) throws IOException {
+    @PreDestroy
+    public void shutdown() {
+        backendPool.close();
+    }
+
+    public List<BackendStatus> getBackendStatus() {
+        return backendPool.getStatus();
+    }
+
+    public Map<OllamaPriority, ClassStats> getSchedulerStats() {
+        return scheduler.getStats();
+    }
+
+    public float[] generateEmbedding(String text, float[] reuse) throws IOException {
+        return generateEmbedding(text, reuse, OllamaPriority.INGESTION);
+    }
+
+    /**
+     * Embeds the text, decoding the response straight from the socket into {@code reuse} when it
+     * already has the model's dimension. Pass the returned array back in on the next call.
+     */
+    public float[] generateEmbedding(String text, float[] reuse, OllamaPriority priority) throws IOException {
         // Create request object
         ObjectNode requestNode = objectMapper.createObjectNode();
         requestNode.put("model", config.getEmbeddingModel());
         requestNode.put("prompt", text);
-        
-        String json = objectMapper.writeValueAsString(requestNode);
-        log.info("Request JSON: {}", json);
+        putKeepAlive(requestNode);
 
-        RequestBody body = RequestBody.create(json, MediaType.parse("application/json"));
+        byte[] json = objectMapper.writeValueAsBytes(requestNode);
+        if (config.isLogPayloads()) {
+            log.info("Request JSON: {}", new String(json, StandardCharsets.UTF_8));
+        }
 
-        Request request = new Request.Builder()
-                .url(config.getBaseUrl() + "/api/embeddings")
-                .post(body)
-                .build();
+        RequestBody body = RequestBody.create(json, MediaType.parse("application/json"));
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Failed to generate embedding: " + response);
-            }
-            return response.body().string();
-        }
+        // a hedged attempt can run alongside the primary, so only the primary decodes into reuse
+        return scheduler.execute(priority, () -> backendPool.executeHedged("/api/embeddings", body,
+                attempt -> response -> {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Failed to generate embedding: " + response);
+                    }
+                    try (JsonParser parser = objectMapper.getFactory()
+                            .createParser(response.body().byteStream())) {
+                        return EmbeddingCodec.readEmbedding(parser, attempt == 0 ? reuse : null);
+                    }
+                }));
     }
 
     public String queryWithContext(String query, String context) throws IOException {
@@ -72,35 +111,107 @@ public class OllamaService {
         requestNode.put("model", config.getModel());
         requestNode.put("prompt", prompt);
         requestNode.put("stream", false);
+        putKeepAlive(requestNode);
 
         String json = objectMapper.writeValueAsString(requestNode);
 
         RequestBody body = RequestBody.create(
                 json, MediaType.parse("application/json"));
 
-        Request request = new Request.Builder()
-                .url(config.getBaseUrl() + "/api/generate")
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                log.error("Ollama request failed: code={}, message={}", response.code(), response.message());
-                throw new IOException("Failed to query Ollama: " + response);
-            }
-
-            String responseBody = response.body().string();
-            log.info("Ollama response: {}", responseBody);
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
-            if (jsonNode.has("response")) {
-                return jsonNode.get("response").asText();
-            } else {
-                 log.error("Ollama response missing 'response' field: {}", responseBody);
-                 throw new IOException("Ollama response missing 'response' field");
-            }
+        try {
+            return scheduler.execute(OllamaPriority.INTERACTIVE,
+                    () -> backendPool.execute("/api/generate", body, response -> {
+                        if (!response.isSuccessful()) {
+                            log.error("Ollama request failed: code={}, message={}", response.code(),
+                                    response.message());
+                            throw new IOException("Failed to query Ollama: " + response);
+                        }
+
+                        String responseBody = response.body().string();
+                        if (config.isLogPayloads()) {
+                            log.info("Ollama response: {}", responseBody);
+                        }
+                        JsonNode jsonNode = objectMapper.readTree(responseBody);
+                        if (jsonNode.has("response")) {
+                            return jsonNode.get("response").asText();
+                        } else {
+                            log.error("Ollama response missing 'response' field: {}", responseBody);
+                            throw new IOException("Ollama response missing 'response' field");
+                        }
+                    }));
         } catch (Exception e) {
             log.error("Error querying Ollama", e);
             throw e;
         }
     }
+
+    /**
+     * Sends the next user turn of {@code conversation} through {@code /api/chat} and records the
+     * reply in it. The unchanged history lets the model reuse the prompt prefix it has cached from
+     * the previous turn, so only the new turn is prefilled.
+     *
+     * @param options Ollama sampling options for this call, or null for the model defaults
+     */
+    public String chat(OllamaConversation conversation, String userMessage, OllamaPriority priority,
+            Map<String, Object> options) throws IOException {
+        ObjectNode requestNode = objectMapper.createObjectNode();
+        requestNode.put("model", config.getModel());
+        requestNode.set("messages", objectMapper.valueToTree(conversation.ask(userMessage)));
+        requestNode.put("stream", false);
+        putKeepAlive(requestNode);
+        if (options != null && !options.isEmpty()) {
+            requestNode.set("options", objectMapper.valueToTree(options));
+        }
+
+        String json = objectMapper.writeValueAsString(requestNode);
+        if (config.isLogPayloads()) {
+            log.info("Request JSON: {}", json);
+        }
+        RequestBody body = RequestBody.create(json, MediaType.parse("application/json"));
+
+        try {
+            String reply = scheduler.execute(priority, () -> backendPool.execute("/api/chat", body,
+                    conversation.getKey(), response -> {
+                        if (!response.isSuccessful()) {
+                            log.error("Ollama chat failed: code={}, message={}", response.code(),
+                                    response.message());
+                            throw new IOException("Failed to chat with Ollama: " + response);
+                        }
+
+                        String responseBody = response.body().string();
+                        if (config.isLogPayloads()) {
+                            log.info("Ollama response: {}", responseBody);
+                        }
+                        JsonNode jsonNode = objectMapper.readTree(responseBody);
+                        JsonNode content = jsonNode.path("message").path("content");
+                        if (content.isMissingNode()) {
+                            log.error("Ollama chat response missing 'message.content': {}", responseBody);
+                            throw new IOException("Ollama chat response missing 'message.content'");
+                        }
+                        // prompt_eval_count only counts the tokens that were not served from the cache
+                        log.debug("Ollama chat {}: prefilled {} tokens in {} ms", conversation.getKey(),
+                                jsonNode.path("prompt_eval_count").asLong(),
+                                TimeUnit.NANOSECONDS.toMillis(jsonNode.path("prompt_eval_duration").asLong()));
+                        return content.asText();
+                    }));
+            conversation.answered(userMessage, reply);
+            return reply;
+        } catch (Exception e) {
+            log.error("Error chatting with Ollama", e);
+            throw e;
+        }
+    }
+
+    private void putKeepAlive(ObjectNode requestNode) {
+        String keepAlive = config.getKeepAlive();
+        if (keepAlive == null || keepAlive.isBlank()) {
+            return;
+        }
+        // plain numbers are seconds to Ollama, anything else a duration string
+        try {
+            requestNode.put("keep_alive", Long.parseLong(keepAlive.trim()));
+        } catch (NumberFormatException e) {
+            requestNode.put("keep_alive", keepAlive.trim());
+        }
+    }
 }
\ No newline at end of file
@@ -1,61 +1,201 @@
 package com.example.rag.service.rag;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import com.example.rag.config.RagConfig;
 import com.example.rag.model.rag.ChatMessage;
+import com.example.rag.model.rag.Document;
 import com.example.rag.model.rag.DocumentChunk;
 import com.example.rag.repository.rag.ChunkRepository;
+import com.example.rag.repository.rag.DocumentRepository;
+import com.example.rag.service.rag.ContextAssemblyService.AssembledContext;
 
+import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Answers chat questions over the uploaded documents.
+ * The request runs as a small dependency graph: the query embedding and the lexical candidate scan
+ * start together; ranking waits for both, and once the context is assembled generation starts
+ * alongside the metadata lookup for the documents of the chosen chunks, which labels the sources.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class QueryService {
+    private static final List<String> STAGES = List.of(
+            "queryEmbedding", "lexicalCandidates", "ranking", "documentMetadata", "generation");
+
     private final ChunkRepository chunkRepository;
+    private final DocumentRepository documentRepository;
     private final OllamaService ollamaService;
+    private final ContextAssemblyService contextAssemblyService;
+    private final RagConfig config;
+    @Qualifier("chatPipelineExecutor")
+    private final ExecutorService executor;
 
     public ChatMessage query(String query, Long documentId) throws Exception {
         log.info("Processing query: {}", query);
+        long start = System.nanoTime();
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+
+        CompletableFuture<float[]> queryEmbedding = stage("queryEmbedding", timings,
+                () -> ollamaService.generateEmbedding(query, null, OllamaPriority.INTERACTIVE))
+                .exceptionally(e -> {
+                    // retrieval still works lexically without the vector
+                    log.warn("Query embedding failed, ranking lexically: {}", e.getMessage());
+                    return null;
+                });
+
+        CompletableFuture<List<Candidate>> candidates = stage("lexicalCandidates", timings,
+                () -> loadCandidates(query, documentId));
+
+        CompletableFuture<AssembledContext> context = queryEmbedding.thenCombine(candidates,
+                (vector, scored) -> timed("ranking", timings, () -> {
+                    List<DocumentChunk> ranked = rank(vector, scored, config.getContext().getCandidateChunks());
+                    // pack the ranked chunks into the token budget, dropping overlap between neighbours
+                    return contextAssemblyService.assemble(ranked);
+                }));
+
+        CompletableFuture<String> answer = context.thenApplyAsync(assembled -> timed("generation", timings,
+                () -> ollamaService.queryWithContext(query, assembled.getText())), executor);
+
+        CompletableFuture<Map<Long, String>> documentNames = context.thenApplyAsync(assembled ->
+                timed("documentMetadata", timings, () -> loadDocumentNames(assembled.getChunks())), executor);
 
+        try {
+            AssembledContext assembled = context.join();
+            String response = answer.join();
+            Map<Long, String> names = documentNames.join();
+
+            ChatMessage message = new ChatMessage();
+            message.setQuery(query);
+            message.setResponse(response);
+            message.setSourceChunks(assembled.getChunks().stream()
+                    .map(c -> String.format("%s - Chunk %d: %s...",
+                            names.getOrDefault(documentIdOf(c), "unknown document"),
+                            c.getChunkIndex(),
+                            c.getContent().substring(0, Math.min(100, c.getContent().length()))))
+                    .toArray(String[]::new));
+
+            Map<String, Long> stageTimings = new LinkedHashMap<>();
+            STAGES.forEach(stageName -> stageTimings.put(stageName, timings.get(stageName)));
+            stageTimings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            message.setStageTimingsMs(stageTimings);
+            log.info("Query answered in {} ms: {}", stageTimings.get("total"), stageTimings);
+            return message;
+
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private <T> CompletableFuture<T> stage(String name, Map<String, Long> timings, Callable<T> work) {
+        return CompletableFuture.supplyAsync(() -> timed(name, timings, work), executor);
+    }
+
+    private static <T> T timed(String name, Map<String, Long> timings, Callable<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.call();
+        } catch (Exception e) {
+            throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+        } finally {
+            timings.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Loads the searchable chunks with their lexical score and decoded vector, so that the
+     * expensive part of ranking overlaps with the query embedding call.
+     */
+    private List<Candidate> loadCandidates(String query, Long documentId) throws Exception {
         List<DocumentChunk> allChunks = documentId != null ? chunkRepository.findByDocumentId(documentId)
                 : chunkRepository.findAll();
 
-        List<DocumentChunk> relevantChunks = findRelevantChunks(query, allChunks, 5);
+        String[] queryWords = query.toLowerCase().split("\\s+");
+        List<Candidate> candidates = new ArrayList<>(allChunks.size());
+        for (DocumentChunk chunk : allChunks) {
+            candidates.add(new Candidate(chunk, calculateRelevance(queryWords, chunk.getContent()),
+                    EmbeddingCodec.decode(chunk.getEmbedding())));
+        }
+        return candidates;
+    }
 
-        String context = relevantChunks.stream()
-                .map(DocumentChunk::getContent)
-                .collect(Collectors.joining("\n\n"));
+    // only the documents the answer cites
+    private Map<Long, String> loadDocumentNames(List<DocumentChunk> chunks) {
+        Set<Long> ids = chunks.stream()
+                .map(QueryService::documentIdOf)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return documentRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Document::getId, Document::getOriginalFilename, (a, b) -> a));
+    }
 
-        String response = ollamaService.queryWithContext(query, context);
+    private List<DocumentChunk> rank(float[] queryVector, List<Candidate> candidates, int topK) {
+        double semanticWeight = queryVector != null ? config.getRetrieval().getSemanticWeight() : 0.0;
+        // one cosine per candidate, not one per comparison
+        double[] scores = new double[candidates.size()];
+        for (int i = 0; i < scores.length; i++) {
+            Candidate c = candidates.get(i);
+            scores[i] = semanticWeight * cosine(queryVector, c.vector) + (1 - semanticWeight) * c.lexicalScore;
+        }
 
-        ChatMessage message = new ChatMessage();
-        message.setQuery(query);
-        message.setResponse(response);
-        message.setSourceChunks(relevantChunks.stream()
-                .map(c -> String.format("Chunk %d: %s...",
-                        c.getChunkIndex(),
-                        c.getContent().substring(0, Math.min(100, c.getContent().length()))))
-                .toArray(String[]::new));
-        return message;
+        // bounded min-heap of the best topK; on equal scores the earlier candidate ranks higher
+        Comparator<Integer> worstFirst = Comparator.<Integer>comparingDouble(i -> scores[i])
+                .thenComparing(Comparator.reverseOrder());
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, topK) + 1, worstFirst);
+        for (int i = 0; i < scores.length && topK > 0; i++) {
+            best.offer(i);
+            if (best.size() > topK) {
+                best.poll();
+            }
+        }
+        List<Integer> ranked = new ArrayList<>(best);
+        ranked.sort(worstFirst.reversed());
+        List<DocumentChunk> chunks = new ArrayList<>(ranked.size());
+        ranked.forEach(i -> chunks.add(candidates.get(i).chunk));
+        return chunks;
     }
 
-    private List<DocumentChunk> findRelevantChunks(String query, List<DocumentChunk> chunks, int topK){
-        return chunks.stream()
-            .sorted((a, b) -> Double.compare(
-                calculateRelevance(query, b.getContent()),
-                calculateRelevance(query, a.getContent())
-            )).limit(topK)
-            .collect(Collectors.toList());
+    private static double cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length || a.length == 0) {
+            return 0.0;
+        }
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA > 0 && normB > 0 ? dot / Math.sqrt(normA * normB) : 0.0;
     }
 
-    private double calculateRelevance(String query, String text){
-        String[] queryWords = query.toLowerCase().split("\\s+");
+    private double calculateRelevance(String[] queryWords, String text){
         String textLower = text.toLowerCase();
 
         long matchCount = Arrays.stream(queryWords)
@@ -64,4 +204,15 @@ public class QueryService {
 
         return (double) matchCount / queryWords.length;
     }
+
+    private static Long documentIdOf(DocumentChunk chunk) {
+        return chunk.getDocument() != null ? chunk.getDocument().getId() : null;
+    }
+
+    @AllArgsConstructor
+    private static class Candidate {
+        private final DocumentChunk chunk;
+        private final double lexicalScore;
+        private final float[] vector;
+    }
 }
@@ -0,0 +1,87 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.responseDtos.BatchScoringSummary;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BatchScoringServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FeatureExtractionService featureExtractionService = new FeatureExtractionService();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void streamsScoresInInputOrderWithErrorLinesAndSummary() throws Exception {
+        MlConfig config = new MlConfig();
+        // small chunks and a short read-ahead so the ordering and back-pressure paths run
+        config.getBatch().setChunkSize(3);
+        config.getBatch().setMaxInFlightChunks(2);
+        BatchScoringService service = new BatchScoringService(featureExtractionService, objectMapper, config, executor);
+
+        StringBuilder input = new StringBuilder();
+        int prompts = 50;
+        for (int i = 0; i < prompts; i++) {
+            input.append("{\"id\":").append(i).append(",\"prompt\":\"Explain topic ").append(i)
+                    .append(" for example in a business context\"}\n");
+            if (i == 10) {
+                input.append("\n");
+                input.append("not json\n");
+                input.append("{\"id\":\"no-prompt\"}\n");
+            }
+        }
+        FeatureVector weights = new FeatureVector();
+        for (FeatureSchema feature : FeatureSchema.values()) {
+            weights.set(feature, feature.getDefaultWeight());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchScoringSummary summary = service.score(
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), out, weights);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(prompts + 2 + 1, lines.size());
+        assertEquals(Long.valueOf(prompts + 2), summary.getPrompts());
+        assertEquals(Long.valueOf(2), summary.getFailed());
+
+        int expectedId = 0;
+        long previousLine = 0;
+        for (String line : lines.subList(0, lines.size() - 1)) {
+            JsonNode node = objectMapper.readTree(line);
+            assertTrue(node.get("line").asLong() > previousLine);
+            previousLine = node.get("line").asLong();
+            if (node.has("error")) {
+                continue;
+            }
+            assertEquals(expectedId, node.get("id").asInt());
+            String prompt = "Explain topic " + expectedId + " for example in a business context";
+            FeatureVector features = featureExtractionService.extractFeatures(prompt);
+            assertEquals(featureExtractionService.calculateQualityScore(features, weights),
+                    node.get("qualityScore").asDouble(), 1e-12);
+            assertEquals(FeatureSchema.SIZE, node.get("features").size());
+            expectedId++;
+        }
+        assertEquals(prompts, expectedId);
+
+        JsonNode last = objectMapper.readTree(lines.get(lines.size() - 1));
+        assertEquals(prompts + 2, last.get("summary").get("prompts").asInt());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.responseDtos.EnsembleMemberStats;
+import com.example.rag.model.ml.PromptRefinement;
+
+public class EnsembleMemberTrackerTest {
+
+    private final Random random = new Random(5);
+    private final TrainingSetStore store = new TrainingSetStore(null, event -> {
+    });
+
+    @Test
+    public void skipsASlowMemberThatBarelyMovesTheEnsemble() {
+        EnsembleMemberTracker tracker = tracker(0.0);
+        // NEURAL echoes the least-squares members but takes 20 ms
+        for (int i = 0; i < 50; i++) {
+            double actual = random.nextDouble();
+            double shared = actual + 0.05 * random.nextGaussian();
+            call(tracker, actual, Map.of("LINEAR", shared, "POLYNOMIAL", shared, "NEURAL", shared + 0.001), 20);
+        }
+
+        assertTrue(tracker.shouldEvaluate("LINEAR"));
+        assertTrue(tracker.shouldEvaluate("POLYNOMIAL"));
+        assertFalse(tracker.shouldEvaluate("NEURAL"));
+        EnsembleMemberStats neural = stats(tracker, "NEURAL");
+        assertTrue(neural.getSkipped());
+        assertEquals(50L, (long) neural.getObservations());
+        assertEquals(20.0, neural.getAverageLatencyMs(), 1.0);
+        assertEquals(1L, (long) neural.getSkips());
+    }
+
+    @Test
+    public void keepsASlowMemberThatEarnsItsLatency() {
+        EnsembleMemberTracker tracker = tracker(0.0);
+        // the least-squares members are noisy; NEURAL is close to the truth
+        for (int i = 0; i < 50; i++) {
+            double actual = random.nextDouble();
+            call(tracker, actual, Map.of("LINEAR", actual + 0.3 * random.nextGaussian(),
+                    "POLYNOMIAL", actual + 0.3 * random.nextGaussian(),
+                    "NEURAL", actual + 0.01 * random.nextGaussian()), 20);
+        }
+
+        assertFalse(stats(tracker, "NEURAL").getSkipped());
+        assertTrue(stats(tracker, "NEURAL").getMarginalGain() > 0.2);
+        assertTrue(tracker.shouldEvaluate("NEURAL"));
+    }
+
+    @Test
+    public void probesSkippedMembersOnASampleOfRequests() {
+        EnsembleMemberTracker tracker = tracker(1.0);
+        for (int i = 0; i < 50; i++) {
+            double actual = random.nextDouble();
+            call(tracker, actual, Map.of("LINEAR", actual, "NEURAL", actual), 20);
+        }
+
+        assertTrue(stats(tracker, "NEURAL").getSkipped());
+        assertTrue(tracker.shouldEvaluate("NEURAL"));
+        assertEquals(1L, (long) stats(tracker, "NEURAL").getProbes());
+    }
+
+    private EnsembleMemberTracker tracker(double probeRate) {
+        MlConfig config = new MlConfig();
+        config.getEnsemble().setProbeRate(probeRate);
+        config.getEnsemble().setMinObservations(30);
+        return new EnsembleMemberTracker(config);
+    }
+
+    // one ensemble call, then the row it was made for commits
+    private void call(EnsembleMemberTracker tracker, double actual, Map<String, Double> predictions,
+            long slowMillis) {
+        double[] row = new double[FeatureSchema.SIZE];
+        Map<String, Double> features = new HashMap<>();
+        for (int j = 0; j < row.length; j++) {
+            row[j] = random.nextDouble();
+            features.put(FeatureSchema.at(j).getFeatureName(), row[j]);
+        }
+        predictions.keySet().forEach(member -> tracker.recordLatency(member,
+                TimeUnit.MILLISECONDS.toNanos("NEURAL".equals(member) ? slowMillis : 0)));
+        tracker.recordPredictions(row, predictions, RegressionModelsService.DEFAULT_ENSEMBLE_WEIGHTS);
+
+        PromptRefinement refinement = new PromptRefinement();
+        refinement.setQualityScore(actual);
+        refinement.setIterationNumber(0);
+        refinement.setExtractedFeatures(features);
+        store.append(refinement);
+        tracker.absorb(store.snapshot());
+    }
+
+    private static EnsembleMemberStats stats(EnsembleMemberTracker tracker, String member) {
+        List<EnsembleMemberStats> stats = tracker.stats();
+        return stats.stream().filter(s -> s.getMember().equals(member)).findFirst().orElseThrow();
+    }
+}
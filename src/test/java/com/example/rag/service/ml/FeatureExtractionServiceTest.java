@@ -0,0 +1,76 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FeatureExtractionServiceTest {
+
+    private final FeatureExtractionService service = new FeatureExtractionService();
+    private final LegacyFeatureExtraction legacy = new LegacyFeatureExtraction();
+
+    // marker words, their look-alikes and the characters the split and boundary rules care about
+    private static final List<String> PIECES = List.of(
+            "is", "this", "Is", "been", "being", "do", "does", "write", "rewrite", "Explain", "describe",
+            "good", "Great", "new", "renewal", "old", "specific", "comprehensive",
+            "for example", "such as", "like", "e.g.", "for instance", "including", "namely",
+            "must", "should", "need to", "required", "limit", "within", "between", "at least",
+            "in", "for", "about", "regarding", "related to", "in the context of", "background", "scenario",
+            "concerning", "with respect to", "analyze", "summarize", "compare", "list", "provide",
+            "thing", "stuff", "something", "somehow", "maybe",
+            "and", "but", "or", "because", "when", "if", "AND", "Or",
+            "technical", "Technical", "scientific", "business", "creative", "academic", "nontechnical",
+            "_business", "business_", "business2", "éacademic", "creativé", "technicaĺ",
+            ",", ";", ":", ".", "...", "!", "?", "?!", "-", "(", ")", "\"", "'", "1", "42",
+            " ", " ", "  ", "\t", "\n", "\r\n", "\u000B", "\f", "\u0001", "\u001C", "\u0085", "\u2028", "\u2029", "\u00A0", "e\u0301", "\u0301is",
+            "İstanbul", "ΣΟΦΙΑΣ", "straße", "prompt", "the", "a", "data", "model", "answer");
+
+    @Test
+    public void matchesLegacyExtractionOnGeneratedPrompts() {
+        Random random = new Random(7);
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder prompt = new StringBuilder();
+            int pieces = random.nextInt(12);
+            for (int i = 0; i < pieces; i++) {
+                prompt.append(PIECES.get(random.nextInt(PIECES.size())));
+                if (random.nextInt(3) > 0) {
+                    prompt.append(' ');
+                }
+            }
+            assertEquivalent(prompt.toString());
+        }
+    }
+
+    @Test
+    public void matchesLegacyExtractionOnEdgeCases() {
+        for (String prompt : List.of("", " ", "   ", "\t\n", ".", "...", "a.", ".a", "..a..", "\u0001", " \u0001 a",
+                "\u0001a b", "a\u0001", "is", " is ", "this is it", "is\nit", "technical", "a technical\nnote",
+                "Technical", "(business)", "business_plan", "Explain the thing, briefly; maybe: and or if.",
+                "Write a detailed, comprehensive report in the context of business strategy. Must be within 500 words!")) {
+            assertEquivalent(prompt);
+        }
+    }
+
+    @Test
+    public void matchesLegacyExtractionOnLongPrompts() {
+        StringBuilder prompt = new StringBuilder();
+        Random random = new Random(11);
+        while (prompt.length() < 8192) {
+            prompt.append(PIECES.get(random.nextInt(PIECES.size()))).append(' ');
+        }
+        assertEquivalent(prompt.toString());
+    }
+
+    private void assertEquivalent(String prompt) {
+        Map<String, Double> expected = legacy.extractFeatures(prompt);
+        FeatureVector actual = service.extractFeatures(prompt);
+        for (FeatureSchema feature : FeatureSchema.values()) {
+            assertEquals(feature.getFeatureName() + " of \"" + prompt + "\"",
+                    expected.get(feature.getFeatureName()), actual.get(feature), 0.0);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FeatureVectorTest {
+
+    @Test
+    public void mapRoundTripKeepsSchemaOrder() {
+        FeatureVector vector = new FeatureVector();
+        for (int i = 0; i < FeatureSchema.SIZE; i++) {
+            vector.set(i, i + 0.5);
+        }
+
+        Map<String, Double> map = vector.toMap();
+
+        assertEquals(List.of("wordCount", "sentenceCount", "avgWordLength", "lexicalDiversity", "punctuationRatio",
+                "semanticClarity", "contextRelevance", "specificityScore", "ambiguityScore", "hasContext",
+                "hasConstraints", "hasExamples", "structuralComplexity", "hasVerbs", "hasNouns", "hasAdjectives",
+                "completenessScore"), List.copyOf(map.keySet()));
+        assertEquals(vector, FeatureVector.fromMap(map));
+    }
+
+    @Test
+    public void fromMapIgnoresUnknownNamesAndZeroFillsMissingOnes() {
+        FeatureVector vector = FeatureVector.fromMap(Map.of("hasExamples", 1.0, "notAFeature", 9.0));
+
+        assertEquals(1.0, vector.get(FeatureSchema.HAS_EXAMPLES), 0.0);
+        assertEquals(0.0, vector.get(FeatureSchema.WORD_COUNT), 0.0);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FeatureWeightStoreTest {
+
+    @Test
+    public void concurrentUpdatesAreNotLost() throws Exception {
+        // persistence is only touched by load and flush
+        FeatureWeightStore store = new FeatureWeightStore(null, null);
+        FeatureSchema feature = FeatureSchema.SEMANTIC_CLARITY;
+        double start = store.get(feature);
+
+        int threads = 8;
+        int steps = 10_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            // half the threads step up and half down, so the weight never reaches the clip bounds
+            double delta = t % 2 == 0 ? 1e-6 : -1e-6;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < steps; i++) {
+                    store.add(feature, delta);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(start, store.get(feature), 1e-9);
+        assertEquals(threads * steps, store.pendingUpdates(feature));
+        assertEquals(0, store.pendingUpdates(FeatureSchema.WORD_COUNT));
+    }
+
+    @Test
+    public void updatesAreClipped() {
+        FeatureWeightStore store = new FeatureWeightStore(null, null);
+        assertEquals(1.0, store.add(FeatureSchema.WORD_COUNT, 5.0), 0.0);
+        assertEquals(0.0, store.add(FeatureSchema.WORD_COUNT, -5.0), 0.0);
+        assertEquals(0.0, store.snapshot().get(FeatureSchema.WORD_COUNT), 0.0);
+    }
+}
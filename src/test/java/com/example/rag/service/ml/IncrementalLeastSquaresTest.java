@@ -0,0 +1,166 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.model.ml.PromptRefinement;
+
+public class IncrementalLeastSquaresTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void matchesBatchOlsAsHistoryGrows() {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        IncrementalLeastSquares model = new IncrementalLeastSquares(UnaryOperator.identity());
+        double[] query = randomRow();
+
+        for (int i = 0; i < 40; i++) {
+            store.append(refinement(randomRow()));
+        }
+        // absorb a first batch, then a second one on top of it
+        model.predict(query, store.snapshot());
+        for (int i = 0; i < 40; i++) {
+            store.append(refinement(randomRow()));
+        }
+        TrainingSnapshot history = store.snapshot();
+
+        assertEquals(batchOls(query, history), model.predict(query, history), 1e-6);
+        assertEquals(80, model.getSampleCount());
+    }
+
+    @Test
+    public void resumesFromSavedStateAndAbsorbsOnlyNewRows() throws Exception {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        IncrementalLeastSquares model = new IncrementalLeastSquares(UnaryOperator.identity());
+        double[] query = randomRow();
+        for (int i = 0; i < 40; i++) {
+            store.append(refinement(randomRow()));
+        }
+        model.predict(query, store.snapshot());
+
+        Path dir = Files.createTempDirectory("models");
+        MlConfig config = new MlConfig();
+        config.setModelDir(dir.toString());
+        ModelStore modelStore = new ModelStore(config);
+        modelStore.saveLeastSquares("linear", model.exportState());
+
+        for (int i = 0; i < 20; i++) {
+            store.append(refinement(randomRow()));
+        }
+        TrainingSnapshot history = store.snapshot();
+        IncrementalLeastSquares restored = new IncrementalLeastSquares(UnaryOperator.identity());
+        assertTrue(restored.restore(modelStore.loadLeastSquares("linear").get(), history));
+        assertEquals(40, restored.getSampleCount());
+
+        assertEquals(batchOls(query, history), restored.predict(query, history), 1e-6);
+        assertEquals(60, restored.getSampleCount());
+
+        // a state covering more rows than the history has came from another history
+        TrainingSetStore smaller = new TrainingSetStore(null, event -> {
+        });
+        smaller.append(refinement(randomRow()));
+        assertFalse(new IncrementalLeastSquares(UnaryOperator.identity())
+                .restore(model.exportState(), smaller.snapshot()));
+    }
+
+    @Test
+    public void rejectsSavedStateBuiltFromOtherRows() {
+        List<PromptRefinement> rows = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            PromptRefinement refinement = refinement(randomRow());
+            refinement.setId(i + 1L);
+            rows.add(refinement);
+        }
+        // rows 40 and 39 committed in the other order, then a restart reloads them by id
+        TrainingSetStore committed = new TrainingSetStore(null, event -> {
+        });
+        rows.subList(0, 38).forEach(committed::append);
+        committed.append(rows.get(39));
+        IncrementalLeastSquares model = new IncrementalLeastSquares(UnaryOperator.identity());
+        model.predict(randomRow(), committed.snapshot());
+        committed.append(rows.get(38));
+
+        TrainingSetStore reloaded = new TrainingSetStore(null, event -> {
+        });
+        rows.forEach(reloaded::append);
+        assertFalse(new IncrementalLeastSquares(UnaryOperator.identity())
+                .restore(model.exportState(), reloaded.snapshot()));
+
+        // the same rows in another order are the same state
+        TrainingSetStore reordered = new TrainingSetStore(null, event -> {
+        });
+        reordered.append(rows.get(39));
+        rows.subList(0, 39).forEach(reordered::append);
+        assertTrue(new IncrementalLeastSquares(UnaryOperator.identity())
+                .restore(model.exportState(), reordered.snapshot()));
+    }
+
+    @Test
+    public void returnsNaNUntilThereAreMoreSamplesThanRegressors() {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        IncrementalLeastSquares model = new IncrementalLeastSquares(UnaryOperator.identity());
+        for (int i = 0; i < 10; i++) {
+            store.append(refinement(randomRow()));
+        }
+
+        assertTrue(Double.isNaN(model.predict(randomRow(), store.snapshot())));
+    }
+
+    private static double batchOls(double[] query, TrainingSnapshot history) {
+        double[][] x = new double[history.size()][history.featureCount()];
+        double[] y = new double[history.size()];
+        for (int i = 0; i < history.size(); i++) {
+            history.row(i, x[i]);
+            y[i] = history.qualityScore(i);
+        }
+        OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+        regression.newSampleData(y, x);
+        double[] beta = regression.estimateRegressionParameters();
+        double prediction = beta[0];
+        for (int j = 0; j < query.length; j++) {
+            prediction += beta[j + 1] * query[j];
+        }
+        return prediction;
+    }
+
+    private double[] randomRow() {
+        double[] row = new double[FeatureSchema.SIZE];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = random.nextDouble();
+        }
+        return row;
+    }
+
+    private PromptRefinement refinement(double[] row) {
+        Map<String, Double> features = new HashMap<>();
+        double score = 0.2;
+        for (int j = 0; j < row.length; j++) {
+            features.put(FeatureSchema.at(j).getFeatureName(), row[j]);
+            score += 0.03 * j * row[j];
+        }
+        PromptRefinement refinement = new PromptRefinement();
+        refinement.setQualityScore(score + 0.05 * random.nextGaussian());
+        refinement.setIterationNumber(0);
+        refinement.setExtractedFeatures(features);
+        return refinement;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.example.rag.service.ml.InferenceBatcher.BatchStats;
+
+public class InferenceBatcherTest {
+
+    private InferenceBatcher batcher;
+    private final ExecutorService callers = Executors.newFixedThreadPool(16);
+
+    @After
+    public void tearDown() {
+        batcher.close();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareForwardPasses() throws Exception {
+        // a forward pass with a fixed cost, like a small network on ND4J
+        batcher = new InferenceBatcher("test-inference", rows -> {
+            sleep(5);
+            double[] out = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                out[i] = rows[i][0] * 2;
+            }
+            return out;
+        }, 8, 2, TimeUnit.MILLISECONDS);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Double>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            double value = i;
+            results.add(CompletableFuture.supplyAsync(() -> {
+                await(start);
+                return batcher.predict(new double[] { value });
+            }, callers));
+        }
+        start.countDown();
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i * 2.0, results.get(i).get(5, TimeUnit.SECONDS), 0.0);
+        }
+        BatchStats stats = batcher.getStats();
+        assertEquals(64, stats.getRows());
+        assertTrue("batches " + stats.getBatches(), stats.getBatches() < 64);
+        assertTrue(stats.getLargestBatch() <= 8);
+        assertTrue(stats.getAverageBatchSize() > 1.0);
+    }
+
+    @Test
+    public void failedForwardPassFailsEveryCallerInTheBatch() throws Exception {
+        batcher = new InferenceBatcher("test-inference", rows -> {
+            throw new IllegalStateException("boom");
+        }, 4, 1, TimeUnit.MILLISECONDS);
+
+        try {
+            batcher.predict(new double[] { 1.0 });
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+            return;
+        }
+        throw new AssertionError("expected the forward pass failure");
+    }
+
+    @Test
+    public void errorsAndShortOutputsFailTheBatchButKeepTheWorker() throws Exception {
+        batcher = new InferenceBatcher("test-inference", rows -> {
+            if (rows[0][0] < 0) {
+                throw new OutOfMemoryError("native");
+            }
+            return rows[0][0] == 0 ? new double[0] : new double[] { rows[0][0] };
+        }, 1, 1, TimeUnit.MILLISECONDS);
+
+        try {
+            batcher.predict(new double[] { -1.0 });
+            throw new AssertionError("expected the forward pass error");
+        } catch (OutOfMemoryError e) {
+            assertEquals("native", e.getMessage());
+        }
+        try {
+            batcher.predict(new double[] { 0.0 });
+            throw new AssertionError("expected the short output to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Forward pass returned 0"));
+        }
+        assertEquals(3.0, batcher.predict(new double[] { 3.0 }), 0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsPredictionsOnceClosed() {
+        batcher = new InferenceBatcher("test-inference", rows -> rows[0], 1, 1, TimeUnit.MILLISECONDS);
+        batcher.close();
+        batcher.predict(new double[] { 1.0 });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
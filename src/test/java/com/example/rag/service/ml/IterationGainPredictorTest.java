@@ -0,0 +1,93 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.model.ml.PromptRefinement;
+
+public class IterationGainPredictorTest {
+
+    private final Random random = new Random(11);
+    private final TrainingSetStore store = new TrainingSetStore(null, event -> {
+    });
+
+    @Test
+    public void learnsDiminishingGainsFromInterleavedSessions() {
+        IterationGainPredictor predictor = predictor();
+        // three sessions at a time, each rewrite closing half the gap to 0.9
+        double[] scores = new double[3];
+        for (int batch = 0; batch < 10; batch++) {
+            for (int iteration = 0; iteration < 4; iteration++) {
+                for (int session = 0; session < scores.length; session++) {
+                    scores[session] = iteration == 0 ? 0.3 + 0.3 * random.nextDouble()
+                            : scores[session] + 0.5 * (0.9 - scores[session]) + 0.001 * random.nextGaussian();
+                    append("s" + batch + "-" + session, iteration, scores[session]);
+                }
+            }
+        }
+        predictor.absorb(store.snapshot());
+
+        assertEquals(90, predictor.samples());
+        assertEquals(0.2, predictor.expectedGain(0.5, 0, 0.0), 0.01);
+        assertEquals(0.01, predictor.expectedGain(0.88, 3, 0.02), 0.01);
+        assertTrue(predictor.isWorthRewriting(0.5, 0, 0.0));
+        assertFalse(predictor.isWorthRewriting(0.89, 3, 0.01));
+
+        // fast rewrites make even a small gain worth having
+        predictor.recordRewrite(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0.1, predictor.rewriteSeconds(), 1e-9);
+        assertTrue(predictor.isWorthRewriting(0.89, 3, 0.01));
+    }
+
+    @Test
+    public void keepsRewritingUntilEnoughIterationsAreStored() {
+        IterationGainPredictor predictor = predictor();
+        for (int session = 0; session < 5; session++) {
+            append("s" + session, 0, 0.85);
+            append("s" + session, 1, 0.85);
+        }
+        predictor.absorb(store.snapshot());
+
+        assertEquals(5, predictor.samples());
+        assertTrue(Double.isNaN(predictor.expectedGain(0.85, 1, 0.0)));
+        assertTrue(predictor.isWorthRewriting(0.85, 1, 0.0));
+    }
+
+    @Test
+    public void ignoresRowsThatDoNotFollowTheSessionsLastIteration() {
+        IterationGainPredictor predictor = predictor();
+        append("a", 0, 0.4);
+        append("a", 2, 0.6);
+        append("b", 1, 0.5);
+        append(null, 1, 0.7);
+        predictor.absorb(store.snapshot());
+
+        assertEquals(0, predictor.samples());
+    }
+
+    private IterationGainPredictor predictor() {
+        MlConfig config = new MlConfig();
+        config.getBudget().setMinGainPerSecond(0.01);
+        config.getBudget().setDefaultRewriteSeconds(1.0);
+        config.getBudget().setMinSamples(30);
+        config.getBudget().setProbeRate(0.0);
+        IterationGainPredictor predictor = new IterationGainPredictor(config, store);
+        predictor.load();
+        return predictor;
+    }
+
+    private void append(String sessionId, int iteration, double score) {
+        PromptRefinement refinement = new PromptRefinement();
+        refinement.setSessionId(sessionId);
+        refinement.setIterationNumber(iteration);
+        refinement.setQualityScore(score);
+        store.append(refinement);
+    }
+}
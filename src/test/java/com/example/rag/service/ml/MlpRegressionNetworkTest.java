@@ -0,0 +1,115 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+public class MlpRegressionNetworkTest {
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void learnsANonLinearTarget() {
+        double[][] inputs = randomRows(200);
+        double[] targets = targets(inputs);
+        MlpRegressionNetwork network = MlpRegressionNetwork.create(RegressionNetworkEngine.LAYER_SIZES, 0.01, 123);
+
+        double before = mse(network.predictBatch(inputs), targets);
+        network.fit(inputs, targets, 300);
+        double after = mse(network.predictBatch(inputs), targets);
+
+        assertTrue("mse " + before + " -> " + after, after < before / 5);
+        assertTrue(after < 0.005);
+    }
+
+    @Test
+    public void copiesAndSavedNetworksTrainIndependentlyFromTheSameState() throws Exception {
+        double[][] inputs = randomRows(50);
+        double[] targets = targets(inputs);
+        MlpRegressionNetwork network = MlpRegressionNetwork.create(RegressionNetworkEngine.LAYER_SIZES, 0.01, 123);
+        network.fit(inputs, targets, 20);
+
+        RegressionNetwork copy = network.copy();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        network.write(saved);
+        RegressionNetwork restored = RegressionNetworkEngine.JAVA.read(new ByteArrayInputStream(saved.toByteArray()));
+        double[] published = network.predictBatch(inputs);
+        assertArrayEquals(published, restored.predictBatch(inputs), 0.0);
+
+        // training a copy leaves the original untouched, and the restored Adam state continues identically
+        copy.fit(inputs, targets, 20);
+        restored.fit(inputs, targets, 20);
+        assertArrayEquals(published, network.predictBatch(inputs), 0.0);
+        assertArrayEquals(copy.predictBatch(inputs), restored.predictBatch(inputs), 0.0);
+        assertEquals(RegressionNetworkEngine.JAVA, restored.engine());
+    }
+
+    @Test
+    public void predictsLikeTheDl4jNetworkWithTheSameWeights() {
+        double[][] inputs = randomRows(50);
+        int[] sizes = RegressionNetworkEngine.LAYER_SIZES;
+        MlpRegressionNetwork network = MlpRegressionNetwork.create(sizes, 0.01, 123);
+        network.fit(inputs, targets(inputs), 20);
+
+        // DL4J computes in float by default; double keeps the comparison about the maths
+        MultiLayerNetwork dl4j = Dl4jRegressionNetwork.create().getNetwork().convertDataType(DataType.DOUBLE);
+        double[] params = network.getParams();
+        int offset = 0;
+        for (int l = 0; l < sizes.length - 1; l++) {
+            double[][] weights = new double[sizes[l]][sizes[l + 1]];
+            for (double[] row : weights) {
+                System.arraycopy(params, offset, row, 0, row.length);
+                offset += row.length;
+            }
+            double[][] biases = new double[1][sizes[l + 1]];
+            System.arraycopy(params, offset, biases[0], 0, biases[0].length);
+            offset += biases[0].length;
+            dl4j.getLayer(l).setParam(DefaultParamInitializer.WEIGHT_KEY, Nd4j.create(weights));
+            dl4j.getLayer(l).setParam(DefaultParamInitializer.BIAS_KEY, Nd4j.create(biases));
+        }
+        assertEquals(params.length, offset);
+
+        INDArray output = dl4j.output(Nd4j.create(inputs));
+        double[] predictions = network.predictBatch(inputs);
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(predictions[i], output.getDouble(i, 0), 1e-7);
+        }
+    }
+
+    private double[][] randomRows(int count) {
+        double[][] rows = new double[count][FeatureSchema.SIZE];
+        for (double[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = random.nextDouble();
+            }
+        }
+        return rows;
+    }
+
+    private static double[] targets(double[][] rows) {
+        double[] targets = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            targets[i] = 0.2 + 0.5 * rows[i][0] * rows[i][1] + 0.2 * Math.max(0.0, rows[i][2] - 0.5);
+        }
+        return targets;
+    }
+
+    private static double mse(double[] predictions, double[] targets) {
+        double sum = 0.0;
+        for (int i = 0; i < targets.length; i++) {
+            sum += (predictions[i] - targets[i]) * (predictions[i] - targets[i]);
+        }
+        return sum / targets.length;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.model.ml.PromptRefinement;
+
+public class ModelSelectionServiceTest {
+
+    private final Random random = new Random(11);
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void picksTheCheapestModelThatIsAsAccurateAsTheBest() throws Exception {
+        // a purely linear target: polynomial terms and blends add nothing
+        ModelSelection selection = select(row -> 0.2 + 0.3 * row[0] + 0.2 * row[3]);
+
+        assertEquals("LINEAR", selection.getMethod());
+        assertEquals(300, selection.getRows());
+        assertTrue(selection.getCrossValidatedMse().keySet()
+                .containsAll(List.of("LINEAR", "POLYNOMIAL", "ENSEMBLE", "FIXED_ENSEMBLE")));
+    }
+
+    @Test
+    public void picksPolynomialWhenInteractionsMatter() throws Exception {
+        ModelSelection selection = select(row -> 0.1 + 0.6 * row[0] * row[1] + 0.3 * row[2] * row[2]);
+
+        assertEquals("POLYNOMIAL", selection.getMethod());
+        assertTrue(selection.getCrossValidatedMse().get("POLYNOMIAL")
+                < selection.getCrossValidatedMse().get("LINEAR") / 2);
+    }
+
+    @Test
+    public void learnsBlendWeightsFromOutOfFoldPredictions() {
+        double[] targets = { 0.1, 0.4, 0.8, 0.3 };
+        double[] exact = targets.clone();
+        double[] constant = { 0.5, 0.5, 0.5, 0.5 };
+
+        assertArrayEquals(new double[] { 0.0, 1.0 },
+                ModelSelectionService.learnWeights(new double[][] { constant, exact }, targets), 1e-12);
+    }
+
+    @Test
+    public void blendsEachFoldWithWeightsLearnedOnTheOthers() {
+        double[] targets = { 0.1, 0.4, 0.8, 0.3, 0.6, 0.2 };
+        double[] exact = targets.clone();
+        double[] constant = { 0.5, 0.5, 0.5, 0.5, 0.5, 0.5 };
+        // the exact member misses one row of fold 2; the other folds don't see that miss
+        exact[4] = 0.9;
+        int[] foldOf = { 0, 1, 2, 0, 2, 1 };
+
+        double[] blended = ModelSelectionService.crossFittedBlend(new double[][] { constant, exact }, targets,
+                foldOf, 3);
+        assertEquals(0.8, blended[2], 1e-12);
+        assertEquals(0.9, blended[4], 1e-12);
+    }
+
+    private ModelSelection select(ToDoubleFunction<double[]> target) throws InterruptedException {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        for (int i = 0; i < 300; i++) {
+            double[] row = randomRow();
+            store.append(refinement(row, target.applyAsDouble(row) + 0.01 * random.nextGaussian()));
+        }
+        MlConfig config = new MlConfig();
+        config.getAuto().setIncludeNeural(false);
+        ModelSelectionService service = new ModelSelectionService(store, config, pool);
+
+        // the first request only starts the run and falls back to the default ensemble
+        assertNull(service.select(store.snapshot()));
+        for (int i = 0; i < 500 && service.getCurrent() == null; i++) {
+            Thread.sleep(10);
+        }
+        ModelSelection selection = service.getCurrent();
+        assertNotNull(selection);
+        assertEquals(store.snapshot().getVersion(), selection.getTrainingVersion());
+        return selection;
+    }
+
+    private double[] randomRow() {
+        double[] row = new double[FeatureSchema.SIZE];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = random.nextDouble();
+        }
+        return row;
+    }
+
+    private static PromptRefinement refinement(double[] row, double score) {
+        Map<String, Double> features = new HashMap<>();
+        for (int j = 0; j < row.length; j++) {
+            features.put(FeatureSchema.at(j).getFeatureName(), row[j]);
+        }
+        PromptRefinement refinement = new PromptRefinement();
+        refinement.setQualityScore(score);
+        refinement.setIterationNumber(0);
+        refinement.setExtractedFeatures(features);
+        return refinement;
+    }
+}
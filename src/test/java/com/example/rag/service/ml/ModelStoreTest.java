@@ -0,0 +1,67 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.service.ml.NeuralNetworkTrainer.NetworkSnapshot;
+
+public class ModelStoreTest {
+
+    private final Random random = new Random(9);
+
+    @Test
+    public void savesTheNetworkTogetherWithItsTrainingIdentity() throws Exception {
+        for (RegressionNetworkEngine engine : RegressionNetworkEngine.values()) {
+            ModelStore store = store(Files.createTempDirectory("models"));
+            RegressionNetwork network = engine.create();
+            double[][] rows = randomRows(20);
+            network.fit(rows, new double[rows.length], 3);
+            store.saveNetwork(new NetworkSnapshot(network, 7, 40, 40, 123, -456));
+
+            NetworkSnapshot loaded = store.loadNetwork(engine).orElseThrow();
+            assertEquals(engine, loaded.getNetwork().engine());
+            assertEquals(7, loaded.getVersion());
+            assertEquals(40, loaded.getTrainingVersion());
+            assertEquals(40, loaded.getTrainingSize());
+            assertEquals(123, loaded.getTrainingMaxId());
+            assertEquals(-456, loaded.getTrainingChecksum());
+            assertArrayEquals(network.predictBatch(rows), loaded.getNetwork().predictBatch(rows), 1e-12);
+        }
+    }
+
+    @Test
+    public void ignoresANetworkFileWithoutAnIdentity() throws Exception {
+        Path dir = Files.createTempDirectory("models");
+        RegressionNetworkEngine engine = RegressionNetworkEngine.JAVA;
+        // a bare network, as saved before the identity moved into the same file
+        try (OutputStream out = Files.newOutputStream(dir.resolve(engine.getFileName()))) {
+            engine.create().write(out);
+        }
+        assertFalse(store(dir).loadNetwork(engine).isPresent());
+    }
+
+    private static ModelStore store(Path dir) {
+        MlConfig config = new MlConfig();
+        config.setModelDir(dir.toString());
+        return new ModelStore(config);
+    }
+
+    private double[][] randomRows(int n) {
+        double[][] rows = new double[n][FeatureSchema.SIZE];
+        for (double[] row : rows) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextDouble();
+            }
+        }
+        return rows;
+    }
+}
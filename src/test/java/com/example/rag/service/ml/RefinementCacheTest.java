@@ -0,0 +1,112 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.example.rag.config.MlConfig;
+import com.example.rag.dto.nestedDtos.IterationDetail;
+import com.example.rag.dto.requestDtos.RefinementRequest;
+import com.example.rag.dto.responseDtos.RefinementResponse;
+
+public class RefinementCacheTest {
+
+    private final FeatureWeightStore weights = new FeatureWeightStore(null, null);
+    private final RefinementCache cache = new RefinementCache(weights, new MlConfig());
+
+    @Test
+    public void servesExactAndNearDuplicatePrompts() {
+        cache.put(request("write a java function to sum two numbers"), converged("s1"));
+
+        Optional<RefinementResponse> exact = cache.lookup(request("  Write a Java function to sum   two numbers. "));
+        assertTrue(exact.isPresent());
+        assertTrue(exact.get().getCacheHit());
+        assertEquals("s1", exact.get().getCachedSessionId());
+        assertEquals(1.0, exact.get().getCacheSimilarity(), 0.0);
+        assertEquals("  Write a Java function to sum   two numbers. ", exact.get().getOriginalPrompt());
+
+        Optional<RefinementResponse> near = cache.lookup(request("write a java function to sum two integer numbers"));
+        assertTrue(near.isPresent());
+        assertTrue(near.get().getCacheSimilarity() < 1.0);
+
+        assertFalse(cache.lookup(request("summarize the history of the roman empire")).isPresent());
+    }
+
+    @Test
+    public void keysOnRequestParameters() {
+        cache.put(request("write a java function to sum two numbers"), converged("s1"));
+
+        RefinementRequest otherMethod = request("write a java function to sum two numbers");
+        otherMethod.setRegressionMethod("LINEAR");
+        assertFalse(cache.lookup(otherMethod).isPresent());
+
+        RefinementRequest reorderedGoals = request("write a java function to sum two numbers");
+        reorderedGoals.setOptimizationGoals(List.of("relevance", "CLARITY"));
+        assertTrue(cache.lookup(reorderedGoals).isPresent());
+
+        RefinementRequest beam = request("write a java function to sum two numbers");
+        beam.setBeamWidth(2);
+        beam.setBeamCandidates(4);
+        assertFalse(cache.lookup(beam).isPresent());
+    }
+
+    @Test
+    public void servesACopyOfTheIterations() {
+        RefinementResponse response = converged("s1");
+        response.setIterations(new ArrayList<>(List.of(IterationDetail.builder()
+                .iteration(0)
+                .qualityScore(0.9)
+                .features(new HashMap<>(Map.of("clarity", 0.8)))
+                .build())));
+        cache.put(request("explain recursion"), response);
+
+        RefinementResponse first = cache.lookup(request("explain recursion")).orElseThrow();
+        first.getIterations().get(0).setQualityScore(0.1);
+        first.getIterations().get(0).getFeatures().put("clarity", 0.1);
+        first.getIterations().clear();
+
+        RefinementResponse second = cache.lookup(request("explain recursion")).orElseThrow();
+        assertEquals(1, second.getIterations().size());
+        assertEquals(0.9, second.getIterations().get(0).getQualityScore(), 0.0);
+        assertEquals(0.8, second.getIterations().get(0).getFeatures().get("clarity"), 0.0);
+    }
+
+    @Test
+    public void skipsUnconvergedSessionsAndDropsEntriesAfterWeightDrift() {
+        RefinementResponse unconverged = converged("s0");
+        unconverged.setConverged(false);
+        cache.put(request("explain recursion"), unconverged);
+        assertEquals(0, cache.size());
+
+        cache.put(request("explain recursion"), converged("s1"));
+        assertTrue(cache.lookup(request("explain recursion")).isPresent());
+
+        weights.add(FeatureSchema.SEMANTIC_CLARITY, 0.1);
+        assertFalse(cache.lookup(request("explain recursion")).isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    private static RefinementRequest request(String prompt) {
+        RefinementRequest request = new RefinementRequest();
+        request.setPrompt(prompt);
+        request.setOptimizationGoals(List.of("CLARITY", "RELEVANCE"));
+        return request;
+    }
+
+    private static RefinementResponse converged(String sessionId) {
+        return RefinementResponse.builder()
+                .sessionId(sessionId)
+                .refinedPrompt("Write a Java method that returns the sum of two int arguments.")
+                .converged(true)
+                .iterations(List.of())
+                .build();
+    }
+}
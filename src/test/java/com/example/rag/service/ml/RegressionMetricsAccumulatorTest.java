@@ -0,0 +1,57 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RegressionMetricsAccumulatorTest {
+
+    @Test
+    public void matchesTwoPassMetrics() {
+        Random random = new Random(3);
+        int n = 1000;
+        double[] actual = new double[n];
+        double[] predicted = new double[n];
+        RegressionMetricsAccumulator accumulator = new RegressionMetricsAccumulator();
+        for (int i = 0; i < n; i++) {
+            actual[i] = 0.3 + 0.5 * random.nextDouble();
+            predicted[i] = actual[i] + 0.1 * random.nextGaussian();
+            accumulator.add(actual[i], predicted[i]);
+        }
+
+        double mean = 0;
+        for (double a : actual) {
+            mean += a;
+        }
+        mean /= n;
+        double ssTot = 0;
+        double ssRes = 0;
+        double sumAbs = 0;
+        for (int i = 0; i < n; i++) {
+            ssTot += (actual[i] - mean) * (actual[i] - mean);
+            ssRes += (actual[i] - predicted[i]) * (actual[i] - predicted[i]);
+            sumAbs += Math.abs(actual[i] - predicted[i]);
+        }
+
+        Map<String, Double> metrics = accumulator.toMap();
+        assertEquals(ssRes / n, metrics.get("mse"), 1e-12);
+        assertEquals(Math.sqrt(ssRes / n), metrics.get("rmse"), 1e-12);
+        assertEquals(sumAbs / n, metrics.get("mae"), 1e-12);
+        assertEquals(1 - ssRes / ssTot, metrics.get("rSquared"), 1e-9);
+    }
+
+    @Test
+    public void emptyAndConstantActuals() {
+        RegressionMetricsAccumulator accumulator = new RegressionMetricsAccumulator();
+        assertTrue(accumulator.toMap().isEmpty());
+
+        accumulator.add(0.5, 0.4);
+        accumulator.add(0.5, 0.6);
+        assertEquals(0.0, accumulator.rSquared(), 0.0);
+        assertEquals(0.01, accumulator.mse(), 1e-12);
+    }
+}
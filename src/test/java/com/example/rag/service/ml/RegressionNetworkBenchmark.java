@@ -0,0 +1,77 @@
+package com.example.rag.service.ml;
+
+import java.util.Random;
+
+/**
+ * Compares the regression network engines on a synthetic history: one background training round
+ * ({@code ml.neural.epochs} full-batch steps), single-row inference as the refinement loop issues
+ * it, and batched inference as {@link InferenceBatcher} issues it. Not a unit test; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.rag.service.ml.RegressionNetworkBenchmark [-Dexec.args="rows epochs"]}.
+ */
+public class RegressionNetworkBenchmark {
+
+    private static final int BATCH = 32;
+
+    // keeps the predictions alive so the JIT can't drop the timed calls
+    private static volatile double sink;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Random random = new Random(42);
+        double[][] inputs = new double[rows][FeatureSchema.SIZE];
+        double[] targets = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < FeatureSchema.SIZE; j++) {
+                inputs[i][j] = random.nextDouble();
+            }
+            targets[i] = 0.2 + 0.5 * inputs[i][0] * inputs[i][1] + 0.1 * inputs[i][2];
+        }
+
+        System.out.printf("%d rows, %d epochs per training round%n", rows, epochs);
+        System.out.printf("%-6s %12s %12s %18s %14s%n", "engine", "train (ms)", "epoch (us)", "1-row predict (us)",
+                Math.min(BATCH, rows) + "-row (us)");
+        for (RegressionNetworkEngine engine : RegressionNetworkEngine.values()) {
+            run(engine, inputs, targets, epochs);
+        }
+    }
+
+    private static void run(RegressionNetworkEngine engine, double[][] inputs, double[] targets, int epochs) {
+        RegressionNetwork network = engine.create();
+        // warm up the JIT (and ND4J's native backend) before timing
+        network.copy().fit(inputs, targets, Math.max(1, epochs / 10));
+
+        long start = System.nanoTime();
+        network.fit(inputs, targets, epochs);
+        double trainMillis = (System.nanoTime() - start) / 1e6;
+
+        double[][][] single = new double[inputs.length][][];
+        for (int i = 0; i < inputs.length; i++) {
+            single[i] = new double[][] { inputs[i] };
+        }
+        // fewer rows than a batch would leave nulls in it
+        double[][] batch = new double[Math.min(BATCH, inputs.length)][];
+        System.arraycopy(inputs, 0, batch, 0, batch.length);
+
+        int iterations = 20_000;
+        for (int i = 0; i < iterations; i++) {
+            sink += network.predictBatch(single[i % single.length])[0];
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += network.predictBatch(single[i % single.length])[0];
+        }
+        double singleMicros = (System.nanoTime() - start) / 1e3 / iterations;
+
+        int batches = iterations / 10;
+        start = System.nanoTime();
+        for (int i = 0; i < batches; i++) {
+            sink += network.predictBatch(batch)[0];
+        }
+        double batchMicros = (System.nanoTime() - start) / 1e3 / batches;
+
+        System.out.printf("%-6s %12.1f %12.1f %18.2f %14.2f%n", engine, trainMillis, trainMillis * 1e3 / epochs,
+                singleMicros, batchMicros);
+    }
+}
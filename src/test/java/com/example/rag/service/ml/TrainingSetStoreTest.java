@@ -0,0 +1,63 @@
+package com.example.rag.service.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.example.rag.model.ml.PromptRefinement;
+
+public class TrainingSetStoreTest {
+
+    @Test
+    public void snapshotsAreUnaffectedByLaterAppends() {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        store.append(refinement(0.1, 3.0));
+        TrainingSnapshot first = store.snapshot();
+
+        // enough rows to force the columns to grow past their initial capacity
+        for (int i = 0; i < 600; i++) {
+            store.append(refinement(0.9, 7.0));
+        }
+        TrainingSnapshot latest = store.snapshot();
+
+        assertEquals(1, first.size());
+        assertEquals(1, first.getVersion());
+        assertEquals(0.1, first.qualityScore(0), 0.0);
+        assertEquals(601, latest.size());
+        assertEquals(0.9, latest.qualityScore(600), 0.0);
+        assertEquals(7.0, latest.feature(FeatureSchema.WORD_COUNT.ordinal(), 600), 0.0);
+    }
+
+    @Test
+    public void missingFeaturesAndPredictionsAreFilledIn() {
+        TrainingSetStore store = new TrainingSetStore(null, event -> {
+        });
+        PromptRefinement refinement = refinement(0.4, 5.0);
+        refinement.setPredictedScore(null);
+        store.append(refinement);
+
+        TrainingSnapshot snapshot = store.snapshot();
+        double[] row = snapshot.row(0, new double[snapshot.featureCount()]);
+
+        assertEquals(5.0, row[0], 0.0);
+        assertEquals(0.0, row[FeatureSchema.COMPLETENESS_SCORE.ordinal()], 0.0);
+        assertTrue(Double.isNaN(snapshot.predictedScore(0)));
+    }
+
+    private static PromptRefinement refinement(double qualityScore, double wordCount) {
+        Map<String, Double> features = new HashMap<>();
+        features.put("wordCount", wordCount);
+        PromptRefinement refinement = new PromptRefinement();
+        refinement.setQualityScore(qualityScore);
+        refinement.setPredictedScore(0.5);
+        refinement.setIterationNumber(0);
+        refinement.setRegressionMethod("LINEAR");
+        refinement.setExtractedFeatures(features);
+        return refinement;
+    }
+}
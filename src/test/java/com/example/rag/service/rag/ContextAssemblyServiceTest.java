@@ -0,0 +1,87 @@
+package com.example.rag.service.rag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.rag.config.RagConfig;
+import com.example.rag.model.rag.Document;
+import com.example.rag.model.rag.DocumentChunk;
+import com.example.rag.service.rag.ContextAssemblyService.AssembledContext;
+
+public class ContextAssemblyServiceTest {
+
+    private RagConfig config;
+    private ContextAssemblyService service;
+
+    @Before
+    public void setUp() {
+        config = new RagConfig();
+        service = new ContextAssemblyService(config);
+    }
+
+    @Test
+    public void removesOverlapBetweenAdjacentChunksOfSameDocument() {
+        Document doc = document(1L);
+        DocumentChunk first = chunk(doc, 0, "Alpha beta gamma. The shared overlap sentence here.");
+        DocumentChunk second = chunk(doc, 1, "The shared overlap sentence here. Delta epsilon.");
+
+        // ranked out of order on purpose - output must follow chunk order
+        AssembledContext context = service.assemble(List.of(second, first));
+
+        assertEquals("Alpha beta gamma. The shared overlap sentence here.\n\nDelta epsilon.",
+                context.getText());
+        assertTrue(context.getTrimmedTokens() > 0);
+    }
+
+    @Test
+    public void keepsTextOfChunksFromDifferentDocuments() {
+        DocumentChunk first = chunk(document(1L), 0, "The shared overlap sentence here.");
+        DocumentChunk second = chunk(document(2L), 1, "The shared overlap sentence here.");
+
+        AssembledContext context = service.assemble(List.of(first, second));
+
+        assertEquals("The shared overlap sentence here.\n\nThe shared overlap sentence here.",
+                context.getText());
+    }
+
+    @Test
+    public void packsMostRelevantChunksWithinBudget() {
+        config.getContext().setTokenBudget(10);
+        Document doc = document(1L);
+        DocumentChunk relevant = chunk(doc, 5, "one two three four five");
+        DocumentChunk filler = chunk(doc, 0, "six seven eight nine ten eleven");
+
+        AssembledContext context = service.assemble(List.of(relevant, filler));
+
+        assertEquals(List.of(relevant), context.getChunks());
+        assertTrue(context.getTokenCount() <= 10);
+    }
+
+    @Test
+    public void truncatesTopChunkWhenNothingFits() {
+        config.getContext().setTokenBudget(4);
+
+        AssembledContext context = service.assemble(List.of(chunk(document(1L), 0, "one two three four five")));
+
+        assertEquals("one two three", context.getText());
+    }
+
+    private static Document document(Long id) {
+        Document document = new Document();
+        document.setId(id);
+        return document;
+    }
+
+    private static DocumentChunk chunk(Document document, int index, String content) {
+        DocumentChunk chunk = new DocumentChunk();
+        chunk.setDocument(document);
+        chunk.setChunkIndex(index);
+        chunk.setContent(content);
+        return chunk;
+    }
+}
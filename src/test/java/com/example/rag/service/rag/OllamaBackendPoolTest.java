@@ -0,0 +1,209 @@
+package com.example.rag.service.rag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.example.rag.config.OllamaConfig;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+
+public class OllamaBackendPoolTest {
+
+    private final List<StubServer> servers = new ArrayList<>();
+    private OllamaBackendPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        servers.forEach(s -> s.server.stop(0));
+    }
+
+    @Test
+    public void routesToBackendWithFewestOutstandingRequests() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StubServer first = start("a", 0, release);
+        StubServer second = start("b", 0, release);
+        pool = new OllamaBackendPool(config(false, first, second), new OkHttpClient());
+
+        CompletableFuture<String> one = CompletableFuture.supplyAsync(this::post);
+        awaitRequests(1, first, second);
+        CompletableFuture<String> two = CompletableFuture.supplyAsync(this::post);
+        awaitRequests(2, first, second);
+
+        // both requests are parked on the stubs, so each backend must hold exactly one
+        assertEquals(1, first.requests.get());
+        assertEquals(1, second.requests.get());
+
+        release.countDown();
+        assertTrue(List.of("a", "b").contains(one.get(5, TimeUnit.SECONDS)));
+        assertTrue(List.of("a", "b").contains(two.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void hedgesSlowEmbeddingCallsOntoAnotherBackend() throws Exception {
+        StubServer slow = start("slow", 3000, null);
+        StubServer fast = start("fast", 0, null);
+        OllamaConfig config = config(true, slow, fast);
+        pool = new OllamaBackendPool(config, new OkHttpClient());
+
+        // warm up the latency window with fast answers from both sides of the round robin
+        slow.delayMillis = 0;
+        for (int i = 0; i < 30; i++) {
+            pool.executeHedged("/api/embeddings", body(), attempt -> r -> r.body().string());
+        }
+        slow.delayMillis = 3000;
+
+        for (int i = 0; i < 4; i++) {
+            long start = System.nanoTime();
+            String answer = pool.executeHedged("/api/embeddings", body(), attempt -> r -> r.body().string());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals("fast", answer);
+            assertTrue("hedged call took " + elapsedMillis + "ms", elapsedMillis < 1500);
+        }
+    }
+
+    @Test
+    public void avoidsBackendThatFailsHealthCheck() throws Exception {
+        StubServer healthy = start("healthy", 0, null);
+        StubServer broken = start("broken", 0, null);
+        broken.healthy = false;
+        pool = new OllamaBackendPool(config(false, healthy, broken), new OkHttpClient());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStatus().get(1).isHealthy() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(pool.getStatus().get(1).isHealthy());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("healthy", post());
+        }
+        assertEquals(0, broken.requests.get());
+    }
+
+    @Test
+    public void keepsEachConversationOnOneBackend() throws Exception {
+        StubServer a = start("a", 0, null);
+        StubServer b = start("b", 0, null);
+        StubServer c = start("c", 0, null);
+        pool = new OllamaBackendPool(config(false, a, b, c), new OkHttpClient());
+
+        Set<String> used = new HashSet<>();
+        for (int session = 0; session < 20; session++) {
+            String key = "session-" + session;
+            String first = pool.execute("/api/chat", body(), key, r -> r.body().string());
+            for (int turn = 0; turn < 4; turn++) {
+                assertEquals(first, pool.execute("/api/chat", body(), key, r -> r.body().string()));
+            }
+            used.add(first);
+        }
+        // sessions still spread over the pool
+        assertTrue(used.size() > 1);
+    }
+
+    private String post() {
+        try {
+            return pool.execute("/api/generate", body(), r -> r.body().string());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RequestBody body() {
+        return RequestBody.create("{}", MediaType.parse("application/json"));
+    }
+
+    private OllamaConfig config(boolean hedge, StubServer... stubs) {
+        OllamaConfig config = new OllamaConfig();
+        config.setTimeout(10000);
+        config.setHealthCheckInterval(50);
+        config.setHedgeEmbeddings(hedge);
+        config.setHedgeMinDelay(50);
+        List<String> urls = new ArrayList<>();
+        for (StubServer stub : stubs) {
+            urls.add("http://localhost:" + stub.server.getAddress().getPort());
+        }
+        config.setBackends(urls);
+        return config;
+    }
+
+    private static void awaitRequests(int expected, StubServer... stubs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            int total = 0;
+            for (StubServer stub : stubs) {
+                total += stub.requests.get();
+            }
+            if (total >= expected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private StubServer start(String name, long delayMillis, CountDownLatch release) throws IOException {
+        StubServer stub = new StubServer();
+        stub.delayMillis = delayMillis;
+        stub.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.server.setExecutor(Executors.newCachedThreadPool());
+        stub.server.createContext("/api/tags", exchange -> {
+            exchange.sendResponseHeaders(stub.healthy ? 200 : 500, -1);
+            exchange.close();
+        });
+        stub.server.createContext("/", exchange -> {
+            stub.requests.incrementAndGet();
+            try {
+                if (release != null) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                Thread.sleep(stub.delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = name.getBytes(StandardCharsets.UTF_8);
+            try {
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            } catch (IOException cancelledByClient) {
+                // the losing side of a hedge is cancelled mid-flight
+            }
+            exchange.close();
+        });
+        stub.server.start();
+        servers.add(stub);
+        return stub;
+    }
+
+    private static class StubServer {
+        private HttpServer server;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delayMillis;
+        private volatile boolean healthy = true;
+    }
+}
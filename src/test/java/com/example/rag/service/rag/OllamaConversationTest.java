@@ -0,0 +1,42 @@
+package com.example.rag.service.rag;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class OllamaConversationTest {
+
+    @Test
+    public void resendsTheHistoryUnchangedAndRestartsWhenItOutgrowsTheBudget() {
+        OllamaConversation conversation = new OllamaConversation("s", "system", 60);
+
+        List<OllamaChatMessage> first = conversation.ask("rewrite one");
+        assertEquals(List.of("system", "user"), roles(first));
+        conversation.answered("rewrite one", "answer one");
+
+        // the second call starts with exactly the messages of the first, so its prefix is cached
+        List<OllamaChatMessage> second = conversation.ask("rewrite two");
+        assertEquals(List.of("system", "user", "assistant", "user"), roles(second));
+        assertEquals("rewrite one", second.get(1).getContent());
+        conversation.answered("rewrite two", "answer two");
+
+        // past the budget only the system message is carried over
+        List<OllamaChatMessage> third = conversation.ask("a much longer third rewrite request");
+        assertEquals(List.of("system", "user"), roles(third));
+        assertEquals("system", third.get(0).getContent());
+    }
+
+    @Test
+    public void keepsUnansweredTurnsOutOfTheHistory() {
+        OllamaConversation conversation = new OllamaConversation("s", "system", 1000);
+        conversation.ask("failed call");
+
+        assertEquals(1, conversation.size());
+    }
+
+    private static List<String> roles(List<OllamaChatMessage> messages) {
+        return messages.stream().map(OllamaChatMessage::getRole).toList();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.rag.service.rag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.example.rag.config.OllamaConfig;
+
+public class OllamaSchedulerTest {
+
+    @Test
+    public void servesQueuedClassesInProportionToWeight() throws Exception {
+        OllamaConfig.Scheduler config = new OllamaConfig.Scheduler();
+        config.setMaxConcurrent(1);
+        config.setInteractive(new OllamaConfig.PriorityClass(1, 3));
+        config.setRefinement(new OllamaConfig.PriorityClass(1, 1));
+        OllamaScheduler scheduler = new OllamaScheduler(config);
+
+        List<OllamaPriority> order = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService callers = Executors.newCachedThreadPool();
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        // hold the only slot while both classes queue up behind it
+        callers.submit(() -> scheduler.execute(OllamaPriority.INGESTION, () -> {
+            try {
+                return blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        awaitRunning(scheduler, OllamaPriority.INGESTION);
+        for (int i = 0; i < 4; i++) {
+            submit(callers, scheduler, OllamaPriority.INTERACTIVE, order);
+            submit(callers, scheduler, OllamaPriority.REFINEMENT, order);
+        }
+        while (scheduler.getStats().get(OllamaPriority.INTERACTIVE).getQueued() < 4
+                || scheduler.getStats().get(OllamaPriority.REFINEMENT).getQueued() < 4) {
+            Thread.sleep(5);
+        }
+        blocker.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+
+        // weight 3:1 - three interactive calls run before the second refinement call
+        assertEquals(8, order.size());
+        assertEquals(3, order.subList(0, 4).stream().filter(p -> p == OllamaPriority.INTERACTIVE).count());
+        assertEquals(4, scheduler.getStats().get(OllamaPriority.INTERACTIVE).getDispatched());
+        assertTrue(scheduler.getStats().get(OllamaPriority.REFINEMENT).getMaxWaitMs() > 0);
+    }
+
+    @Test
+    public void derivesTheGlobalCapFromHealthyBackends() throws Exception {
+        OllamaConfig.Scheduler config = new OllamaConfig.Scheduler();
+        config.setMaxConcurrentPerBackend(2);
+        config.setInteractive(new OllamaConfig.PriorityClass(100, 1));
+        OllamaScheduler scheduler = new OllamaScheduler(config, () -> 3);
+
+        ExecutorService callers = Executors.newCachedThreadPool();
+        CountDownLatch blocker = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            callers.submit(() -> scheduler.execute(OllamaPriority.INTERACTIVE, () -> {
+                try {
+                    return blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        while (scheduler.getStats().get(OllamaPriority.INTERACTIVE).getQueued() < 4) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(6, scheduler.getStats().get(OllamaPriority.INTERACTIVE).getRunning());
+        blocker.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void scalesClassCapsWithHealthyBackends() throws Exception {
+        OllamaConfig.Scheduler config = new OllamaConfig.Scheduler();
+        config.setMaxConcurrentPerBackend(4);
+        config.setRefinement(new OllamaConfig.PriorityClass(1, 1));
+        AtomicInteger healthy = new AtomicInteger(2);
+        OllamaScheduler scheduler = new OllamaScheduler(config, healthy::get);
+
+        ExecutorService callers = Executors.newCachedThreadPool();
+        CountDownLatch blocker = new CountDownLatch(1);
+        for (int i = 0; i < 6; i++) {
+            callers.submit(() -> scheduler.execute(OllamaPriority.REFINEMENT, () -> {
+                try {
+                    return blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        while (scheduler.getStats().get(OllamaPriority.REFINEMENT).getQueued() < 4) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, scheduler.getStats().get(OllamaPriority.REFINEMENT).getRunning());
+
+        // a third backend lets one more refinement call in at the next dispatch
+        healthy.set(3);
+        submit(callers, scheduler, OllamaPriority.INGESTION, Collections.synchronizedList(new ArrayList<>()));
+        while (scheduler.getStats().get(OllamaPriority.REFINEMENT).getRunning() < 3) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, scheduler.getStats().get(OllamaPriority.REFINEMENT).getQueued());
+        blocker.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void submit(ExecutorService callers, OllamaScheduler scheduler, OllamaPriority priority,
+            List<OllamaPriority> order) {
+        callers.submit(() -> scheduler.execute(priority, () -> order.add(priority)));
+    }
+
+    private static void awaitRunning(OllamaScheduler scheduler, OllamaPriority priority) throws InterruptedException {
+        while (scheduler.getStats().get(priority).getRunning() == 0) {
+            Thread.sleep(5);
+        }
+    }
+}